@@ -0,0 +1,43 @@
+import java.net.DatagramSocket;
+
+public class LoggerBridge implements bench.LoggerTarget {
+
+    private ParticipantLogger participantLogger;
+    private CoordinatorLogger coordinatorLogger;
+
+    public void setUp(String mode) {
+        if (mode.startsWith("async"))
+            System.setProperty("logger.async", "true");
+        if (mode.endsWith("windowed"))
+            System.setProperty("logger.window", "64");
+        try {
+            int port;
+            try (DatagramSocket probe = new DatagramSocket(0)) {
+                port = probe.getLocalPort();
+            }
+            Thread server = new Thread(() -> {
+                try {
+                    new UDPLoggerServer(port);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }, "benchmark-logger-server");
+            server.setDaemon(true);
+            server.start();
+            ParticipantLogger.initLogger(port, 10001, 1000);
+            CoordinatorLogger.initLogger(port, 10000, 1000);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        participantLogger = ParticipantLogger.getLogger();
+        coordinatorLogger = CoordinatorLogger.getLogger();
+    }
+
+    public void participantMessage(int i) {
+        participantLogger.messageSent(10002, "VOTE 10001 A 10003 B");
+    }
+
+    public void coordinatorMessage(int i) {
+        coordinatorLogger.messageReceived(10001, "OUTCOME A 10001 10002 10003");
+    }
+}
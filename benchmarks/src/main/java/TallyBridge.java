@@ -0,0 +1,85 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class TallyBridge implements bench.TallyTarget {
+
+    private static final String[] OPTIONS = { "A", "B", "C", "D", "E" };
+
+    private List<Vote> votes;
+    private String[] sorted;
+    private VoteStore store;
+    private TallyEngine engine;
+
+    public void setUp(int electorate) {
+        Random random = new Random(42);
+        votes = new ArrayList<>(electorate);
+        for (int i = 0; i < electorate; i++)
+            votes.add(new Vote(10000 + i, OPTIONS[random.nextInt(OPTIONS.length)]));
+        sorted = lexicalGraphicalSort(votes);
+        OptionTable options = new OptionTable(Arrays.asList(OPTIONS));
+        store = new VoteStore(options);
+        for (Vote vote: votes)
+            store.add(vote.getParticipantPort(), options.id(vote.getVote()));
+        engine = new TallyEngine(options, new PluralityRule());
+    }
+
+    public Object sort() {
+        return lexicalGraphicalSort(votes);
+    }
+
+    public Object majority() {
+        return getMajority(sorted);
+    }
+
+    public Object tally() {
+        return engine.decide(store);
+    }
+
+    /**
+     * The selection sort Participant used to order the votes before
+     * counting them, kept as the baseline {@link TallyEngine} is measured against.
+     */
+    static String[] lexicalGraphicalSort(List<Vote> currentVotes) {
+        String[] votes = new String[currentVotes.size()];
+        for (int i = 0; i < votes.length; i++) {
+            votes[i] = currentVotes.get(i).getVote();
+        }
+        for (int i = 0; i < votes.length; i++) {
+            for (int j = i + 1; j < votes.length; j++) {
+                if (votes[i].compareTo(votes[j]) > 0) {
+                    String temp = votes[i];
+                    votes[i] = votes[j];
+                    votes[j] = temp;
+                }
+            }
+        }
+        return votes;
+    }
+
+    /**
+     * The count Participant made over the sorted votes, kept as a baseline
+     * like {@link #lexicalGraphicalSort}.
+     */
+    static String getMajority(String[] sortedVotes) {
+        Map<String, Integer> map = new HashMap<>();
+
+        for (String vote : sortedVotes) {
+            String selectedVote = vote;
+            Integer val = map.get(selectedVote);
+            map.put(selectedVote, val == null ? 1 : val + 1);
+        }
+
+        Map.Entry<String, Integer> max = null;
+
+        for (Map.Entry<String, Integer> e : map.entrySet()) {
+            if (max == null || e.getValue() > max.getValue()
+                    || (e.getValue().equals(max.getValue()) && e.getKey().compareTo(max.getKey()) < 0))
+                max = e;
+        }
+        return max.getKey();
+    }
+}
@@ -0,0 +1,54 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class TokenizerBridge implements bench.TokenizerTarget {
+
+    private static final String[] OPTIONS = { "A", "B", "C", "D", "E" };
+
+    private final ReqTokenizer tokenizer = new ReqTokenizer();
+    private final StreamingTokenizer streaming = new StreamingTokenizer(new OptionTable(Arrays.asList(OPTIONS)));
+    private final ParsedToken parsed = new ParsedToken();
+    private String line;
+    private ByteBuffer bytes;
+
+    public void setUp(String type, int electorate) {
+        StringBuilder req = new StringBuilder(type);
+        switch (type) {
+        case "JOIN":
+            req.append(' ').append(10000);
+            break;
+        case "DETAILS":
+            for (int i = 0; i < electorate; i++)
+                req.append(' ').append(10000 + i);
+            break;
+        case "VOTE_OPTIONS":
+            for (String option: OPTIONS)
+                req.append(' ').append(option);
+            break;
+        case "VOTE":
+            for (int i = 0; i < electorate; i++)
+                req.append(' ').append(10000 + i).append(' ').append(OPTIONS[i % OPTIONS.length]);
+            break;
+        case "OUTCOME":
+            req.append(' ').append(OPTIONS[0]);
+            for (int i = 0; i < electorate; i++)
+                req.append(' ').append(10000 + i);
+            break;
+        default:
+            throw new IllegalArgumentException(type);
+        }
+        line = req.toString();
+        bytes = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Object getToken() {
+        return tokenizer.getToken(line);
+    }
+
+    public int parseStreaming() {
+        bytes.clear();
+        streaming.parse(bytes, parsed);
+        return parsed.count;
+    }
+}
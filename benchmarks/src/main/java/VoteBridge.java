@@ -0,0 +1,40 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class VoteBridge implements bench.VoteTarget {
+
+    private static final OptionTable OPTIONS = new OptionTable(Arrays.asList("A", "B", "C", "D", "E"));
+
+    private final BinaryCodec codec = new BinaryCodec(OPTIONS);
+    private final ByteArrayOutputStream frame = new ByteArrayOutputStream();
+    private VoteStore votes;
+    private int electorate;
+
+    public void setUp(int electorate) {
+        this.electorate = electorate;
+        votes = new VoteStore(OPTIONS);
+        votes.beginRound();
+        for (int i = 0; i < electorate; i++)
+            votes.add(10000 + i, i % OPTIONS.declared());
+    }
+
+    public boolean isNewVote(int probe) {
+        return !votes.contains(10000 + probe % (2 * electorate));
+    }
+
+    public int buildRoundMessage(boolean binary) {
+        VoteToken msg = new VoteToken(null, votes.learnedThisRound());
+        if (!binary)
+            return msg.message().getBytes(StandardCharsets.UTF_8).length;
+        frame.reset();
+        try {
+            codec.encode(msg, frame);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return frame.size();
+    }
+}
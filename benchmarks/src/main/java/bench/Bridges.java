@@ -0,0 +1,20 @@
+package bench;
+
+/**
+ * The voting code lives in the unnamed package, which named packages cannot
+ * import and JMH cannot generate benchmarks for. Each benchmark therefore
+ * drives it through a small interface implemented by a bridge class in the
+ * unnamed package of this module, loaded here by name.
+ */
+final class Bridges {
+
+    private Bridges() { }
+
+    static <T> T load(Class<T> target, String bridgeClass) {
+        try {
+            return target.cast(Class.forName(bridgeClass).getDeclaredConstructor().newInstance());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot load benchmark bridge " + bridgeClass, e);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Logging throughput against a UDPLoggerServer on loopback. The loggers are
+ * per-JVM singletons, so every mode runs in its own fork.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+public class LoggerBenchmark {
+
+    @Param({ "sync", "async", "windowed", "async-windowed" })
+    public String mode;
+
+    private LoggerTarget target;
+    private int i;
+
+    @Setup
+    public void setUp() {
+        target = Bridges.load(LoggerTarget.class, "LoggerBridge");
+        target.setUp(mode);
+    }
+
+    @Benchmark
+    public void participantLogger() {
+        target.participantMessage(i++);
+    }
+
+    @Benchmark
+    public void coordinatorLogger() {
+        target.coordinatorMessage(i++);
+    }
+}
@@ -0,0 +1,17 @@
+package bench;
+
+public interface LoggerTarget {
+
+    /**
+     * Starts a {@code UDPLoggerServer} on a free local port and initialises
+     * the Participant and Coordinator loggers against it. {@code mode} is
+     * one of sync, async, windowed or async-windowed.
+     */
+    void setUp(String mode);
+
+    /** One {@code ParticipantLogger.messageSent} call. */
+    void participantMessage(int i);
+
+    /** One {@code CoordinatorLogger.messageReceived} call. */
+    void coordinatorMessage(int i);
+}
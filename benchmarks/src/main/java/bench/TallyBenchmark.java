@@ -0,0 +1,48 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Deciding the outcome: sorting the collected votes and
+ * counting the majority, against the single-pass {@code TallyEngine}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TallyBenchmark {
+
+    @Param({ "10", "100", "1000", "10000", "100000" })
+    public int electorate;
+
+    private TallyTarget target;
+
+    @Setup
+    public void setUp() {
+        target = Bridges.load(TallyTarget.class, "TallyBridge");
+        target.setUp(electorate);
+    }
+
+    @Benchmark
+    public Object lexicalGraphicalSort() {
+        return target.sort();
+    }
+
+    @Benchmark
+    public Object getMajority() {
+        return target.majority();
+    }
+
+    @Benchmark
+    public Object tallyEngine() {
+        return target.tally();
+    }
+}
@@ -0,0 +1,16 @@
+package bench;
+
+public interface TallyTarget {
+
+    /** Prepares {@code electorate} votes spread over a handful of options. */
+    void setUp(int electorate);
+
+    /** The selection sort Participant used before the tally engine, on the prepared votes */
+    Object sort();
+
+    /** The majority count Participant used before the tally engine, on the prepared votes, already sorted */
+    Object majority();
+
+    /** {@code TallyEngine.decide} with the plurality rule on the same votes */
+    Object tally();
+}
@@ -0,0 +1,46 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Parsing one request of each type, with the list-carrying types sized by
+ * the electorate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TokenizerBenchmark {
+
+    @Param({ "JOIN", "DETAILS", "VOTE_OPTIONS", "VOTE", "OUTCOME" })
+    public String type;
+
+    @Param({ "10", "1000" })
+    public int electorate;
+
+    private TokenizerTarget target;
+
+    @Setup
+    public void setUp() {
+        target = Bridges.load(TokenizerTarget.class, "TokenizerBridge");
+        target.setUp(type, electorate);
+    }
+
+    @Benchmark
+    public Object getToken() {
+        return target.getToken();
+    }
+
+    @Benchmark
+    public int parseStreaming() {
+        return target.parseStreaming();
+    }
+}
@@ -0,0 +1,16 @@
+package bench;
+
+public interface TokenizerTarget {
+
+    /**
+     * Prepares one request of the given type, e.g. "VOTE", carrying
+     * {@code electorate} ports or votes where the type has a list.
+     */
+    void setUp(String type, int electorate);
+
+    /** {@code ReqTokenizer.getToken} on the prepared request */
+    Object getToken();
+
+    /** {@code StreamingTokenizer.parse} on the prepared request, into a reused token */
+    int parseStreaming();
+}
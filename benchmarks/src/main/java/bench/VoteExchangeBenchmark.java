@@ -0,0 +1,49 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The per-vote work of a round: checking a received vote is new and building
+ * the message a Sender re-broadcasts.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class VoteExchangeBenchmark {
+
+    @Param({ "10", "100", "1000", "10000", "100000" })
+    public int electorate;
+
+    private VoteTarget target;
+    private int probe;
+
+    @Setup
+    public void setUp() {
+        target = Bridges.load(VoteTarget.class, "VoteBridge");
+        target.setUp(electorate);
+    }
+
+    @Benchmark
+    public boolean isNewVote() {
+        return target.isNewVote(probe++);
+    }
+
+    @Benchmark
+    public int buildTextRoundMessage() {
+        return target.buildRoundMessage(false);
+    }
+
+    @Benchmark
+    public int buildBinaryRoundMessage() {
+        return target.buildRoundMessage(true);
+    }
+}
@@ -0,0 +1,16 @@
+package bench;
+
+public interface VoteTarget {
+
+    /** Prepares a vote store holding {@code electorate} votes, all learned this round. */
+    void setUp(int electorate);
+
+    /** The membership test the Receiver makes on each vote it is sent, {@code VoteStore.contains}; half the probes miss. */
+    boolean isNewVote(int probe);
+
+    /**
+     * Builds the round message {@code Sender.sendRoundNVotes} sends to each
+     * peer, as text or as a binary frame, and returns its size in bytes.
+     */
+    int buildRoundMessage(boolean binary);
+}
@@ -0,0 +1,135 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+class BinaryCodecTest {
+
+    private final OptionTable options = new OptionTable(Arrays.asList("A", "B", "C"));
+
+    @Test
+    void voteRoundTripsWithItsRound() throws IOException {
+        VoteList votes = new VoteList(options);
+        votes.add(4001, options.id("B"));
+        votes.add(4002, options.id("C"));
+        VoteToken vote = new VoteToken(null, votes);
+        vote._session = 7;
+        vote._round = 3;
+
+        ParsedToken parsed = new ParsedToken();
+        assertTrue(new BinaryCodec(options).decode(in(encode(vote)), parsed));
+        assertEquals(ParsedToken.VOTE, parsed.type);
+        assertEquals(7, parsed.session);
+        assertEquals(3, parsed.round);
+        assertEquals(2, parsed.count);
+        assertEquals(4001, parsed.ports[0]);
+        assertEquals("B", parsed.optionName(parsed.options[0]));
+        assertEquals(4002, parsed.ports[1]);
+        assertEquals("C", parsed.optionName(parsed.options[1]));
+    }
+
+    @Test
+    void detailsAndDoneRoundTripAsTokens() throws IOException {
+        DetailsToken details = new DetailsToken(null, Arrays.asList(4001, 4002, 4003));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryCodec codec = new BinaryCodec(options);
+        codec.encode(details, out);
+        codec.encode(new DoneToken(null), out);
+
+        ByteArrayInputStream in = in(out.toByteArray());
+        BinaryCodec decoder = new BinaryCodec(options);
+        assertEquals("DETAILS 4001 4002 4003", decoder.decode(in).message());
+        assertEquals("DONE", decoder.decode(in).message());
+        assertNull(decoder.decode(in));
+    }
+
+    @Test
+    void endOfStreamBetweenFramesIsClean() throws IOException {
+        assertFalse(new BinaryCodec(options).decode(in(new byte[0]), new ParsedToken()));
+    }
+
+    @Test
+    void rejectsFrameLongerThanTheLimit() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryCodec.writeVarint(out, BinaryCodec.MAX_FRAME + 1);
+        IOException e = assertThrows(IOException.class,
+                () -> new BinaryCodec(options).decode(in(out.toByteArray()), new ParsedToken()));
+        assertTrue(e.getMessage().contains("exceeds"));
+    }
+
+    @Test
+    void rejectsStreamEndingInsideAFrame() throws IOException {
+        byte[] frame = encode(new DetailsToken(null, Arrays.asList(4001, 4002)));
+        byte[] truncated = Arrays.copyOf(frame, frame.length - 1);
+        assertThrows(EOFException.class,
+                () -> new BinaryCodec(options).decode(in(truncated), new ParsedToken()));
+    }
+
+    @Test
+    void rejectsCountRunningPastTheFrame() throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        payload.write(BinaryCodec.DETAILS);
+        BinaryCodec.writeVarint(payload, 0);
+        BinaryCodec.writeVarint(payload, 100);
+        BinaryCodec.writeVarint(payload, 4001);
+        assertThrows(IOException.class,
+                () -> new BinaryCodec(options).decode(in(frame(payload)), new ParsedToken()));
+    }
+
+    @Test
+    void rejectsStringRunningPastTheFrame() throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        payload.write(BinaryCodec.VOTE_OPTIONS);
+        BinaryCodec.writeVarint(payload, 0);
+        BinaryCodec.writeVarint(payload, 1);
+        BinaryCodec.writeVarint(payload, 50);
+        payload.write('A');
+        assertThrows(IOException.class,
+                () -> new BinaryCodec(options).decode(in(frame(payload)), new ParsedToken()));
+    }
+
+    @Test
+    void rejectsEmptyFrame() throws IOException {
+        assertThrows(IOException.class,
+                () -> new BinaryCodec(options).decode(in(frame(new ByteArrayOutputStream())), new ParsedToken()));
+    }
+
+    @Test
+    void readLineStopsAtTheNewlineSoFramesCanFollow() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write("JOIN 4001 BINARY\r\n".getBytes());
+        new BinaryCodec(options).encode(new DoneToken(null), out);
+
+        ByteArrayInputStream in = in(out.toByteArray());
+        assertEquals("JOIN 4001 BINARY", BinaryCodec.readLine(in));
+        ParsedToken parsed = new ParsedToken();
+        assertTrue(new BinaryCodec(options).decode(in, parsed));
+        assertEquals(ParsedToken.DONE, parsed.type);
+    }
+
+    private byte[] encode(Token token) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BinaryCodec(options).encode(token, out);
+        return out.toByteArray();
+    }
+
+    private static byte[] frame(ByteArrayOutputStream payload) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryCodec.writeVarint(out, payload.size());
+        payload.writeTo(out);
+        return out.toByteArray();
+    }
+
+    private static ByteArrayInputStream in(byte[] bytes) {
+        return new ByteArrayInputStream(bytes);
+    }
+}
@@ -0,0 +1,84 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class ReceiveWindowTest {
+
+    @Test
+    void acknowledgesInOrderDatagramsCumulatively() {
+        ReceiveWindow window = new ReceiveWindow(1);
+        assertTrue(window.accept(1, 1));
+        assertTrue(window.accept(2, 1));
+        assertEquals("ACK 2", window.ack());
+        assertFalse(window.accept(2, 1));
+    }
+
+    @Test
+    void listsOutOfOrderDatagramsSelectively() {
+        ReceiveWindow window = new ReceiveWindow(1);
+        window.accept(1, 1);
+        assertTrue(window.accept(3, 1));
+        assertTrue(window.accept(5, 1));
+        assertFalse(window.accept(3, 1));
+        assertEquals("ACK 1 5 3", window.ack());
+
+        assertTrue(window.accept(2, 1));
+        assertEquals("ACK 3 5", window.ack());
+    }
+
+    @Test
+    void selectiveListCoversTheNewestDatagrams() {
+        ReceiveWindow window = new ReceiveWindow(1);
+        for (long seq = 2; seq <= 101; seq++)
+            window.accept(seq, 1);
+
+        String[] fields = window.ack().split(" ");
+        assertEquals(2 + ReceiveWindow.MAX_SELECTIVE, fields.length);
+        assertEquals("0", fields[1]);
+        assertEquals("101", fields[2]);
+        assertEquals(String.valueOf(101 - ReceiveWindow.MAX_SELECTIVE + 1), fields[fields.length - 1]);
+    }
+
+    @Test
+    void floorSkipsDatagramsTheSenderGaveUpOn() {
+        ReceiveWindow window = new ReceiveWindow(1);
+        window.accept(1, 1);
+        window.accept(3, 1);
+        window.accept(4, 1);
+        assertEquals(2, window.pending());
+
+        // 2 was never delivered; the sender's floor moving to 5 settles it.
+        assertTrue(window.accept(6, 5));
+        assertEquals(4, window.cumulative());
+        assertEquals(1, window.pending());
+        assertEquals("ACK 4 6", window.ack());
+        assertFalse(window.accept(2, 5));
+
+        assertTrue(window.accept(5, 5));
+        assertEquals(6, window.cumulative());
+        assertEquals(0, window.pending());
+    }
+
+    @Test
+    void keepsOneWindowPerProcessAcrossRestarts() {
+        Map<String, ReceiveWindow> windows = new HashMap<>();
+        ReceiveWindow first = ReceiveWindow.select(windows, "4001", 100);
+        assertSame(first, ReceiveWindow.select(windows, "4001", 100));
+
+        ReceiveWindow restarted = ReceiveWindow.select(windows, "4001", 200);
+        assertNotSame(first, restarted);
+        assertNull(ReceiveWindow.select(windows, "4001", 100));
+        assertSame(restarted, ReceiveWindow.select(windows, "4001", 200));
+
+        ReceiveWindow.select(windows, "4002", 100);
+        assertEquals(2, windows.size());
+    }
+}
@@ -0,0 +1,59 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+class StreamingTokenizerTest {
+
+    private final StreamingTokenizer tokenizer = new StreamingTokenizer(new OptionTable(Arrays.asList("A", "B")));
+
+    @Test
+    void parsesRoundTaggedVote() {
+        ParsedToken token = new ParsedToken();
+        assertTrue(tokenizer.parse(line("SESSION 7 ROUND 2 VOTE 4001 A 4002 B"), token));
+        assertEquals(ParsedToken.VOTE, token.type);
+        assertEquals(7, token.session);
+        assertEquals(2, token.round);
+        assertEquals("VOTE 4001 A 4002 B", token.message().substring("SESSION 7 ROUND 2 ".length()));
+    }
+
+    @Test
+    void rejectsMalformedNumber() {
+        ParsedToken token = new ParsedToken();
+        assertFalse(tokenizer.parse(line("VOTE 40x1 A"), token));
+        assertEquals(ParsedToken.NONE, token.type);
+    }
+
+    @Test
+    void rejectsNumberThatOverflows() {
+        ParsedToken token = new ParsedToken();
+        assertFalse(tokenizer.parse(line("DETAILS 4001 99999999999"), token));
+        assertFalse(tokenizer.parse(line("JOIN 2147483648"), token));
+        assertTrue(tokenizer.parse(line("JOIN 2147483647"), token));
+        assertEquals(Integer.MAX_VALUE, token.ports[0]);
+    }
+
+    @Test
+    void readerGoesOnAfterAMalformedLine() throws IOException {
+        byte[] bytes = "VOTE 1e9 A\r\nVOTE 4001 B\n".getBytes(StandardCharsets.UTF_8);
+        StreamingTokenReader reader = new StreamingTokenReader(new ByteArrayInputStream(bytes), tokenizer);
+        ParsedToken token = new ParsedToken();
+        assertTrue(reader.read(token));
+        assertEquals(ParsedToken.NONE, token.type);
+        assertTrue(reader.read(token));
+        assertEquals(ParsedToken.VOTE, token.type);
+        assertEquals(4001, token.ports[0]);
+        assertFalse(reader.read(token));
+    }
+
+    private static ByteBuffer line(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,76 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class TopologyTest {
+
+    private static final int N = 10;
+
+    @Test
+    void gossipIsAFullMeshUnlessAFaultBoundIsDeclared() {
+        Topology topology = Topology.gossip(4000, others(4000), 3, N - 1);
+        assertTrue(topology.isFullMesh());
+        assertEquals(N - 1, topology.getSendTo().size());
+    }
+
+    @Test
+    void fanoutIsRaisedToCoverTheFaultBound() {
+        Topology topology = Topology.gossip(4000, others(4000), 2, 3);
+        assertFalse(topology.isFullMesh());
+        assertEquals(4, topology.getSendTo().size());
+        assertEquals(4, topology.getReceiveFromCount());
+    }
+
+    @Test
+    void survivorsStayConnectedAfterMaxFaultsCrashes() {
+        int maxFaults = 2;
+        Map<Integer, List<Integer>> overlay = new HashMap<>();
+        for (int port = 4000; port < 4000 + N; port++)
+            overlay.put(port, Topology.gossip(port, others(port), 1, maxFaults).getSendTo());
+
+        for (int a = 4000; a < 4000 + N; a++) {
+            for (int b = a + 1; b < 4000 + N; b++) {
+                Set<Integer> crashed = Set.of(a, b);
+                for (int from = 4000; from < 4000 + N; from++) {
+                    if (!crashed.contains(from))
+                        assertEquals(N - maxFaults, reachable(overlay, from, crashed).size(),
+                                "from " + from + " with " + crashed + " crashed");
+                }
+            }
+        }
+    }
+
+    private static List<Integer> others(int self) {
+        List<Integer> others = new ArrayList<>();
+        for (int port = 4000; port < 4000 + N; port++) {
+            if (port != self)
+                others.add(port);
+        }
+        return others;
+    }
+
+    private static Set<Integer> reachable(Map<Integer, List<Integer>> overlay, int from, Set<Integer> crashed) {
+        Set<Integer> seen = new HashSet<>();
+        Deque<Integer> queue = new ArrayDeque<>();
+        seen.add(from);
+        queue.add(from);
+        while (!queue.isEmpty()) {
+            for (int next: overlay.get(queue.poll())) {
+                if (!crashed.contains(next) && seen.add(next))
+                    queue.add(next);
+            }
+        }
+        return seen;
+    }
+}
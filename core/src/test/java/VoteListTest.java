@@ -0,0 +1,71 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+class VoteListTest {
+
+    private final OptionTable options = new OptionTable(Arrays.asList("A", "B", "A"));
+
+    @Test
+    void packsPortAndOptionIntoOneLong() {
+        long vote = VoteList.pack(65535, 2);
+        assertEquals(65535, VoteList.port(vote));
+        assertEquals(2, VoteList.option(vote));
+        assertEquals(-1, VoteList.option(VoteList.pack(4001, -1)));
+        assertEquals(4001, VoteList.port(VoteList.pack(4001, -1)));
+    }
+
+    @Test
+    void growsAndPrintsInVoteForm() {
+        VoteList votes = new VoteList(options);
+        for (int port = 4000; port < 4020; port++)
+            votes.add(port, port % 2);
+
+        assertEquals(20, votes.size());
+        assertEquals(4019, votes.portAt(19));
+        assertEquals(1, votes.optionAt(19));
+        StringBuilder msg = new StringBuilder("VOTE");
+        votes.subList(0, 2).appendTo(msg);
+        assertEquals("VOTE 4000 A 4001 B", msg.toString());
+        assertEquals("<4018, A>, <4019, B>", votes.subList(18, 20).toString());
+    }
+
+    @Test
+    void repeatedOptionsShareTheirFirstId() {
+        assertEquals(0, options.id("A"));
+        assertEquals(1, options.id("B"));
+        assertEquals(0, options.canonical(2));
+        assertEquals(3, options.size());
+        assertEquals(-1, options.id("C"));
+    }
+
+    @Test
+    void unknownOptionsAreDroppedNotInterned() throws IOException {
+        Token text = tokenizer().getToken("VOTE 4001 A 4002 C 4003 B");
+        assertEquals("VOTE 4001 A 4003 B", ((VoteToken) text).render());
+
+        VoteList votes = new VoteList(options);
+        votes.add(4001, 0);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OptionTable peerOptions = new OptionTable(Arrays.asList("B"));
+        // A is not in the peer's list, so it goes on the wire by name and is dropped on the way in.
+        new BinaryCodec(peerOptions).encode(new VoteToken(null, votes), out);
+        Token binary = new BinaryCodec(peerOptions).decode(new ByteArrayInputStream(out.toByteArray()));
+        assertTrue(binary instanceof VoteToken);
+        assertEquals(0, ((VoteToken) binary).vote.size());
+
+        assertEquals(3, options.size());
+    }
+
+    private ReqTokenizer tokenizer() {
+        ReqTokenizer tokenizer = new ReqTokenizer();
+        tokenizer.setOptions(options);
+        return tokenizer;
+    }
+}
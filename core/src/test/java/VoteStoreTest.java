@@ -0,0 +1,84 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+class VoteStoreTest {
+
+    private final OptionTable options = new OptionTable(Arrays.asList("A", "B", "C"));
+
+    @Test
+    void keepsTheFirstVoteOfEachPort() {
+        VoteStore store = new VoteStore(options);
+        assertTrue(store.add(4001, 0));
+        assertTrue(store.add(4002, 1));
+        assertFalse(store.add(4001, 2));
+
+        assertEquals(2, store.size());
+        assertEquals(0, store.option(4001));
+        assertEquals(1, store.option(4002));
+        assertTrue(store.contains(4002));
+        assertFalse(store.contains(4003));
+        assertEquals(-1, store.option(4003));
+    }
+
+    @Test
+    void findsEveryVoteAfterGrowing() {
+        VoteStore store = new VoteStore(options);
+        for (int port = 5000; port < 5500; port++)
+            assertTrue(store.add(port, port % 3));
+
+        assertEquals(500, store.size());
+        for (int port = 5000; port < 5500; port++)
+            assertEquals(port % 3, store.option(port));
+        for (int i = 0; i < store.size(); i++) {
+            assertEquals(5000 + i, store.portAt(i));
+            assertEquals((5000 + i) % 3, store.optionAt(i));
+        }
+        assertFalse(store.contains(5500));
+    }
+
+    @Test
+    void learnedThisRoundIsTheSliceSinceBeginRound() {
+        VoteStore store = new VoteStore(options);
+        store.add(4001, 0);
+        store.add(4002, 1);
+        store.beginRound();
+        assertEquals(0, store.learnedThisRoundCount());
+        assertTrue(store.learnedThisRound().isEmpty());
+
+        store.add(4003, 2);
+        store.add(4001, 1);
+        store.add(4004, 0);
+
+        VoteList round = store.learnedThisRound();
+        assertEquals(2, store.learnedThisRoundCount());
+        assertEquals(2, round.size());
+        assertEquals(VoteList.pack(4003, 2), round.get(0));
+        assertEquals(VoteList.pack(4004, 0), round.get(1));
+        assertEquals(4, store.allVotes().size());
+    }
+
+    @Test
+    void viewsAreReadOnlyAndSurviveGrowth() {
+        VoteStore store = new VoteStore(options);
+        store.add(4001, 0);
+        VoteList all = store.allVotes();
+        assertThrows(UnsupportedOperationException.class, () -> all.add(4002, 1));
+
+        store.beginRound();
+        store.add(4002, 1);
+        VoteList round = store.learnedThisRound();
+        for (int port = 6000; port < 6100; port++)
+            store.add(port, 2);
+
+        assertEquals(1, all.size());
+        assertEquals(4001, all.portAt(0));
+        assertEquals(1, round.size());
+        assertEquals(4002, round.portAt(0));
+    }
+}
@@ -0,0 +1,114 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class WriteAheadLogTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void recoversSyncedRecordsInOrder() throws Exception {
+        WriteAheadLog wal = open();
+        assertTrue(wal.isEmpty());
+        wal.append("DETAILS 4002 4003");
+        wal.appendAndSync("OPTIONS A B");
+        wal.close();
+
+        WriteAheadLog reopened = open();
+        assertFalse(reopened.isEmpty());
+        assertEquals(Collections.emptyList(), reopened.recoveredCheckpoint());
+        assertEquals(Arrays.asList("DETAILS 4002 4003", "OPTIONS A B"), reopened.recoveredRecords());
+        reopened.close();
+    }
+
+    @Test
+    void dropsATornLastRecordAndAppendsAfterTheIntactPrefix() throws Exception {
+        WriteAheadLog wal = open();
+        wal.appendAndSync("VOTE 4001 A");
+        wal.close();
+        Files.write(logFile(), "1234abcd ROUND 1 40".getBytes(StandardCharsets.US_ASCII), StandardOpenOption.APPEND);
+
+        WriteAheadLog recovered = open();
+        assertEquals(Collections.singletonList("VOTE 4001 A"), recovered.recoveredRecords());
+        recovered.appendAndSync("ROUND 1 4002 B");
+        recovered.close();
+
+        WriteAheadLog reopened = open();
+        assertEquals(Arrays.asList("VOTE 4001 A", "ROUND 1 4002 B"), reopened.recoveredRecords());
+        reopened.close();
+    }
+
+    @Test
+    void stopsAtTheFirstRecordWhoseCrcDoesNotMatch() throws Exception {
+        WriteAheadLog wal = open();
+        wal.append("VOTE 4001 A");
+        wal.append("ROUND 1 4002 B");
+        wal.appendAndSync("ROUND 2 4003 A");
+        wal.close();
+        byte[] data = Files.readAllBytes(logFile());
+        String text = new String(data, StandardCharsets.UTF_8);
+        data[text.indexOf("4002")] = '5';
+        Files.write(logFile(), data);
+
+        WriteAheadLog recovered = open();
+        assertEquals(Collections.singletonList("VOTE 4001 A"), recovered.recoveredRecords());
+        recovered.close();
+        assertEquals(text.indexOf('\n') + 1, Files.size(logFile()));
+    }
+
+    @Test
+    void checkpointReplacesTheRecordsBeforeIt() throws Exception {
+        WriteAheadLog wal = new WriteAheadLog(dir, "p", 2);
+        wal.append("VOTE 4001 A");
+        assertFalse(wal.needsCheckpoint());
+        wal.append("ROUND 1 4002 B");
+        assertTrue(wal.needsCheckpoint());
+        wal.checkpoint(() -> Arrays.asList("DETAILS 4002", "ROUND 1 4001 A 4002 B"));
+        assertFalse(wal.needsCheckpoint());
+        wal.appendAndSync("EXCHANGED");
+        wal.close();
+
+        WriteAheadLog reopened = open();
+        assertEquals(Arrays.asList("DETAILS 4002", "ROUND 1 4001 A 4002 B"), reopened.recoveredCheckpoint());
+        assertEquals(Collections.singletonList("EXCHANGED"), reopened.recoveredRecords());
+        reopened.delete();
+        assertFalse(Files.exists(logFile()));
+        assertFalse(Files.exists(dir.resolve("p.checkpoint")));
+    }
+
+    @Test
+    void recordsLargerThanTheStagingBufferRoundTrip() throws Exception {
+        char[] votes = new char[100_000];
+        Arrays.fill(votes, 'A');
+        String large = "ROUND 1 4002 " + new String(votes);
+        WriteAheadLog wal = open();
+        wal.append("VOTE 4001 A");
+        wal.append(large);
+        wal.appendAndSync("EXCHANGED");
+        wal.close();
+
+        WriteAheadLog reopened = open();
+        assertEquals(Arrays.asList("VOTE 4001 A", large, "EXCHANGED"), reopened.recoveredRecords());
+        reopened.close();
+    }
+
+    private WriteAheadLog open() throws IOException {
+        return new WriteAheadLog(dir, "p", 1024);
+    }
+
+    private Path logFile() {
+        return dir.resolve("p.wal");
+    }
+}
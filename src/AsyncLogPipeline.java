@@ -0,0 +1,180 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Takes log lines off the protocol threads. Producers publish into a
+ * bounded lock-free ring buffer and return immediately; a single background
+ * drainer hands the lines to a {@link Sink} in batches, so file writes and
+ * the UDP round trips to the logger server no longer sit on the protocol
+ * path.
+ *
+ * Enabled with -Dlogger.async=true. The ring size, batch size and the
+ * {@link Overflow} policy applied when the ring is full are set with
+ * -Dlogger.bufferSize, -Dlogger.batchSize and -Dlogger.overflow.
+ */
+public class AsyncLogPipeline {
+
+	/**
+	 * What a producer does when the ring buffer has no free slot.
+	 */
+	public enum Overflow {
+		/** wait for the drainer to free a slot; nothing is lost */
+		BLOCK,
+		/** discard the line */
+		DROP,
+		/** once the ring is three quarters full keep only one line in {@link #SAMPLE_RATE}; drop when full */
+		SAMPLE
+	}
+
+	/**
+	 * Receives the drained lines on the drainer thread.
+	 */
+	public interface Sink {
+		void writeBatch(List<String> lines);
+	}
+
+	static final int SAMPLE_RATE = 8;
+
+	private final String[] slots;
+	private final AtomicLongArray sequences;
+	private final int mask;
+	private final AtomicLong tail = new AtomicLong();
+	private volatile long head;
+
+	private final Sink sink;
+	private final Overflow overflow;
+	private final int batchSize;
+	private final Thread drainer;
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong sampled = new AtomicLong();
+	private volatile boolean idle = false;
+	private volatile boolean running = true;
+
+	/**
+	 * @return a pipeline configured from the logger.* system properties, or null if async logging is off
+	 */
+	public static AsyncLogPipeline fromSystemProperties(String name, Sink sink) {
+		if (!Boolean.getBoolean("logger.async"))
+			return null;
+		return new AsyncLogPipeline(name, sink,
+				Integer.getInteger("logger.bufferSize", 8192),
+				Integer.getInteger("logger.batchSize", 64),
+				Overflow.valueOf(System.getProperty("logger.overflow", "block").toUpperCase()));
+	}
+
+	public AsyncLogPipeline(String name, Sink sink, int capacity, int batchSize, Overflow overflow) {
+		int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		this.slots = new String[size];
+		this.sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++)
+			sequences.set(i, i);
+		this.mask = size - 1;
+		this.sink = sink;
+		this.batchSize = batchSize;
+		this.overflow = overflow;
+		this.drainer = new Thread(this::drain, name + "-log-drainer");
+		drainer.setDaemon(true);
+		drainer.start();
+	}
+
+	/**
+	 * Queues a line for the drainer, applying the overflow policy if the ring is full.
+	 */
+	public void publish(String line) {
+		if (overflow == Overflow.SAMPLE && backlog() > (mask + 1) * 3 / 4
+				&& sampled.incrementAndGet() % SAMPLE_RATE != 0) {
+			dropped.incrementAndGet();
+			return;
+		}
+		while (!offer(line)) {
+			if (overflow != Overflow.BLOCK || !running) {
+				dropped.incrementAndGet();
+				return;
+			}
+			LockSupport.unpark(drainer);
+			LockSupport.parkNanos(50_000);
+		}
+		if (idle)
+			LockSupport.unpark(drainer);
+	}
+
+	/**
+	 * @return the number of lines discarded by the overflow policy so far
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	private long backlog() {
+		return tail.get() - head;
+	}
+
+	private boolean offer(String line) {
+		long position = tail.get();
+		while (true) {
+			int index = (int) position & mask;
+			long difference = sequences.get(index) - position;
+			if (difference == 0) {
+				if (tail.compareAndSet(position, position + 1)) {
+					slots[index] = line;
+					sequences.lazySet(index, position + 1);
+					return true;
+				}
+				position = tail.get();
+			} else if (difference < 0) {
+				return false;
+			} else {
+				position = tail.get();
+			}
+		}
+	}
+
+	private String poll() {
+		int index = (int) head & mask;
+		if (sequences.get(index) != head + 1)
+			return null;
+		String line = slots[index];
+		slots[index] = null;
+		sequences.lazySet(index, head + mask + 1);
+		head++;
+		return line;
+	}
+
+	private void drain() {
+		List<String> batch = new ArrayList<>(batchSize);
+		while (true) {
+			String line;
+			while (batch.size() < batchSize && (line = poll()) != null)
+				batch.add(line);
+			if (!batch.isEmpty()) {
+				sink.writeBatch(batch);
+				batch.clear();
+				continue;
+			}
+			if (!running && tail.get() == head)
+				return;
+			idle = true;
+			if (tail.get() == head)
+				LockSupport.parkNanos(10_000_000);
+			idle = false;
+		}
+	}
+
+	/**
+	 * Stops accepting lines once everything queued so far has been drained.
+	 */
+	public void close() {
+		if (!running)
+			return;
+		running = false;
+		LockSupport.unpark(drainer);
+		try {
+			drainer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,156 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * The state of one vote hosted by a Coordinator: its options, participant
+ * quota, the participants that joined and the aggregate of the outcomes
+ * they reported.
+ * Session 0 is the default ballot that untagged messages belong to.
+ */
+public class Ballot {
+
+    private final int sessionId;
+    private final int maxParticipants;
+    private final List<String> options;
+    private final List<Integer> participantIds;
+    private final OutcomeAggregator outcomes;
+    /** the outcome each finished participant reported, null for those that crashed */
+    private final Map<Integer, String> finished;
+    /** released once the quota is reached; a latch rather than wait() so a virtual thread is not pinned */
+    private final CountDownLatch full = new CountDownLatch(1);
+
+    public Ballot(int sessionId, int maxParticipants, List<String> options, OutcomeAggregator outcomes) {
+        this.sessionId = sessionId;
+        this.maxParticipants = maxParticipants;
+        this.options = options;
+        this.participantIds = new ArrayList<>();
+        this.outcomes = outcomes;
+        this.finished = new LinkedHashMap<>();
+    }
+
+    public int getSessionId() {
+        return sessionId;
+    }
+
+    public int getMaxParticipants() {
+        return maxParticipants;
+    }
+
+    public List<String> getOptions() {
+        return options;
+    }
+
+    public OutcomeAggregator getOutcomes() {
+        return outcomes;
+    }
+
+    /**
+     * A participant that already joined may join again, as it does to
+     * report its outcome to a restarted Coordinator; it keeps its place.
+     *
+     * @return false if the quota was already reached and the participant was not added
+     */
+    public synchronized boolean join(int participantId) {
+        if (participantIds.contains(participantId))
+            return true;
+        if (participantIds.size() >= maxParticipants)
+            return false;
+        participantIds.add(participantId);
+        if (participantIds.size() == maxParticipants) {
+            outcomes.startClock();
+            full.countDown();
+        }
+        return true;
+    }
+
+    public synchronized boolean isFull() {
+        return participantIds.size() >= maxParticipants;
+    }
+
+    public void awaitFull() throws InterruptedException {
+        full.await();
+    }
+
+    /**
+     * @param id the participant the DETAILS message is addressed to
+     * @return the IDs of every joined participant except {@code id}
+     */
+    public synchronized List<Integer> otherParticipants(int id) {
+        List<Integer> participantPorts = new ArrayList<>();
+        for (Integer currentId: participantIds) {
+            if (currentId != id)
+                participantPorts.add(currentId);
+        }
+        return participantPorts;
+    }
+
+    /**
+     * @return false if the participant had already finished, in which case the outcome is ignored
+     */
+    public synchronized boolean outcomeReceived(int participantId, String outcome) {
+        if (finished.containsKey(participantId))
+            return false;
+        finished.put(participantId, outcome);
+        outcomes.outcomeReceived(outcome);
+        return true;
+    }
+
+    /**
+     * Records that a participant will not report an outcome.
+     *
+     * @return false if the participant had already finished
+     */
+    public synchronized boolean participantCrashed(int participantId) {
+        if (finished.containsKey(participantId))
+            return false;
+        finished.put(participantId, null);
+        outcomes.participantCrashed();
+        return true;
+    }
+
+    /**
+     * @return true once every participant of a full ballot has reported its outcome or crashed
+     */
+    public synchronized boolean isFinished() {
+        return participantIds.size() >= maxParticipants && finished.size() >= participantIds.size();
+    }
+
+    public synchronized int finishedCount() {
+        return finished.size();
+    }
+
+    /**
+     * Appends the write-ahead log records that rebuild this ballot.
+     */
+    public synchronized void snapshot(List<String> records) {
+        for (Integer id: participantIds)
+            records.add("JOIN " + sessionId + " " + id);
+        for (Map.Entry<Integer, String> participant: finished.entrySet()) {
+            if (participant.getValue() == null)
+                records.add("CRASH " + sessionId + " " + participant.getKey());
+            else
+                records.add("OUTCOME " + sessionId + " " + participant.getKey() + " " + participant.getValue());
+        }
+    }
+
+    /**
+     * @return the DETAILS message listing {@code participantPorts}, addressed to this ballot's session
+     */
+    DetailsToken details(List<Integer> participantPorts) {
+        DetailsToken details = new DetailsToken(null, participantPorts);
+        details._session = sessionId;
+        return details;
+    }
+
+    /**
+     * @return the VOTE_OPTIONS message, addressed to this ballot's session
+     */
+    VoteOptionsToken voteOptions() {
+        VoteOptionsToken voteOptions = new VoteOptionsToken(null, options);
+        voteOptions._session = sessionId;
+        return voteOptions;
+    }
+}
@@ -0,0 +1,387 @@
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary framing for the requests understood by {@link ReqTokenizer}.
+ *
+ * A frame is a varint payload length followed by the payload: a type byte,
+ * the varint session id and the request fields, which for VOTE start with
+ * the varint round number (0 when untagged). Ports and counts are
+ * varints; options are written as their index in the VOTE_OPTIONS list plus
+ * one, or as 0 followed by the UTF-8 string when the option is unknown.
+ * Both ends must share the same option list, which every participant gets
+ * from the Coordinator.
+ *
+ * Frames are checked as they are read: a length above {@link #MAX_FRAME},
+ * a field or count running past the end of its frame, or a stream ending
+ * inside a frame is an IOException, which the reader treats like a
+ * connection reset by the peer.
+ *
+ * The framing is declared, not negotiated. A participant dialling a peer
+ * with -Dprotocol.binary=true appends BINARY to its JOIN line and writes
+ * frames from the next byte on; the peer reads the JOIN line as text and
+ * switches to frames for that connection. Nothing is acknowledged, so the
+ * peer must understand BINARY, and in practice every participant of a
+ * ballot runs with the same setting.
+ *
+ * A codec keeps scratch buffers for the stream it serves, so each
+ * connection gets its own and a codec is not safe for concurrent use.
+ */
+class BinaryCodec {
+
+    static final int JOIN = 1;
+    static final int DETAILS = 2;
+    static final int VOTE_OPTIONS = 3;
+    static final int VOTE = 4;
+    static final int OUTCOME = 5;
+    static final int DONE = 6;
+
+    /** the longest frame accepted from a peer; a VOTE naming every participant of a large ballot fits */
+    static final int MAX_FRAME = 1 << 20;
+
+    private OptionTable options = new OptionTable(new ArrayList<>());
+    private String[] optionNames = new String[0];
+    private final ByteArrayOutputStream payload = new ByteArrayOutputStream(256);
+    private byte[] frame = new byte[256];
+    private int position;
+    private int limit;
+
+    BinaryCodec() { ; }
+
+    BinaryCodec(OptionTable options) {
+	setOptions(options);
+    }
+
+    void setOptions(OptionTable options) {
+	this.options = options;
+	this.optionNames = options.declaredNames().toArray(new String[0]);
+    }
+
+    /**
+     * Writes one frame for {@code token} to {@code out}; the caller flushes.
+     */
+    void encode(Token token, OutputStream out) throws IOException {
+	payload.reset();
+	if (token instanceof JoinToken) {
+	    payload.write(JOIN);
+	    writeVarint(payload, token._session);
+	    writeVarint(payload, ((JoinToken) token)._id);
+	} else if (token instanceof DetailsToken) {
+	    List<Integer> ports = ((DetailsToken) token)._portList;
+	    payload.write(DETAILS);
+	    writeVarint(payload, token._session);
+	    writeVarint(payload, ports.size());
+	    for (Integer port: ports)
+		writeVarint(payload, port);
+	} else if (token instanceof VoteOptionsToken) {
+	    List<String> optionList = ((VoteOptionsToken) token).optionList;
+	    payload.write(VOTE_OPTIONS);
+	    writeVarint(payload, token._session);
+	    writeVarint(payload, optionList.size());
+	    for (String option: optionList)
+		writeString(payload, option);
+	} else if (token instanceof VoteToken) {
+	    VoteList votes = ((VoteToken) token).vote;
+	    payload.write(VOTE);
+	    writeVarint(payload, token._session);
+	    writeVarint(payload, token._round);
+	    writeVarint(payload, votes.size());
+	    for (int i = 0; i < votes.size(); i++) {
+		writeVarint(payload, votes.portAt(i));
+		writeOption(votes.optionAt(i), votes.getOptions());
+	    }
+	} else if (token instanceof OutcomeToken) {
+	    OutcomeToken outcome = (OutcomeToken) token;
+	    payload.write(OUTCOME);
+	    writeVarint(payload, token._session);
+	    writeOption(outcome.outcome);
+	    String[] ports = outcome.portsInvolved.trim().isEmpty() ? new String[0] : outcome.portsInvolved.trim().split(" ");
+	    writeVarint(payload, ports.length);
+	    for (String port: ports)
+		writeVarint(payload, Integer.parseInt(port));
+	} else if (token instanceof DoneToken) {
+	    payload.write(DONE);
+	    writeVarint(payload, token._session);
+	} else {
+	    throw new IllegalArgumentException("Cannot encode " + token);
+	}
+	writeVarint(out, payload.size());
+	payload.writeTo(out);
+    }
+
+    /**
+     * Reads one frame from {@code in}.
+     *
+     * @return the decoded request, null at end of stream or for an unknown frame type
+     */
+    Token decode(InputStream in) throws IOException {
+	if (!readFrame(in))
+	    return null;
+
+	int type = nextByte();
+	int session = nextVarint();
+	Token token;
+	switch (type) {
+	case JOIN:
+	    token = new JoinToken(null, nextVarint());
+	    break;
+	case DETAILS: {
+	    int count = nextCount();
+	    List<Integer> ports = new ArrayList<>(count);
+	    for (int i = 0; i < count; i++)
+		ports.add(nextVarint());
+	    token = new DetailsToken(null, ports);
+	    break;
+	}
+	case VOTE_OPTIONS: {
+	    int count = nextCount();
+	    List<String> optionList = new ArrayList<>(count);
+	    for (int i = 0; i < count; i++)
+		optionList.add(nextString());
+	    setOptions(new OptionTable(optionList));
+	    token = new VoteOptionsToken(null, optionList);
+	    break;
+	}
+	case VOTE: {
+	    int round = nextVarint();
+	    int count = nextCount();
+	    VoteList votes = new VoteList(options);
+	    for (int i = 0; i < count; i++) {
+		int port = nextVarint();
+		int option = nextOptionIndex();
+		if (option >= 0)
+		    votes.add(port, option);
+	    }
+	    token = new VoteToken(null, votes);
+	    token._round = round;
+	    break;
+	}
+	case OUTCOME: {
+	    String outcome = nextOption();
+	    int count = nextCount();
+	    StringBuilder ports = new StringBuilder();
+	    for (int i = 0; i < count; i++)
+		ports.append(' ').append(nextVarint());
+	    token = new OutcomeToken(null, outcome, ports.toString());
+	    break;
+	}
+	case DONE:
+	    token = new DoneToken(null);
+	    break;
+	default:
+	    return null;
+	}
+	token._session = session;
+	return token;
+    }
+
+    /**
+     * Reads one frame from {@code in} into {@code token} without building
+     * strings; options become indices into the shared option list.
+     *
+     * @return false at end of stream
+     */
+    boolean decode(InputStream in, ParsedToken token) throws IOException {
+	if (!readFrame(in))
+	    return false;
+	token.reset(optionNames);
+	int type = nextByte();
+	token.session = nextVarint();
+	switch (type) {
+	case JOIN:
+	    token.type = ParsedToken.JOIN;
+	    token.addPort(nextVarint());
+	    break;
+	case DETAILS: {
+	    token.type = ParsedToken.DETAILS;
+	    int count = nextCount();
+	    for (int i = 0; i < count; i++)
+		token.addPort(nextVarint());
+	    break;
+	}
+	case VOTE_OPTIONS: {
+	    token.type = ParsedToken.VOTE_OPTIONS;
+	    int count = nextCount();
+	    List<String> optionList = new ArrayList<>(count);
+	    for (int i = 0; i < count; i++)
+		optionList.add(nextString());
+	    setOptions(new OptionTable(optionList));
+	    token.optionList = optionList;
+	    token.optionNames = optionNames;
+	    break;
+	}
+	case VOTE: {
+	    token.type = ParsedToken.VOTE;
+	    token.round = nextVarint();
+	    int count = nextCount();
+	    for (int i = 0; i < count; i++) {
+		int port = nextVarint();
+		token.addVote(port, nextOptionIndex());
+	    }
+	    break;
+	}
+	case OUTCOME: {
+	    token.type = ParsedToken.OUTCOME;
+	    token.outcome = nextOptionIndex();
+	    int count = nextCount();
+	    for (int i = 0; i < count; i++)
+		token.addPort(nextVarint());
+	    break;
+	}
+	case DONE:
+	    token.type = ParsedToken.DONE;
+	    break;
+	default:
+	    token.type = ParsedToken.NONE;
+	}
+	return true;
+    }
+
+    private boolean readFrame(InputStream in) throws IOException {
+	int length;
+	try {
+	    length = readVarint(in);
+	} catch (EOFException e) {
+	    return false;
+	}
+	if (length < 0 || length > MAX_FRAME)
+	    throw new IOException("Frame length " + (length & 0xffffffffL) + " exceeds " + MAX_FRAME);
+	if (frame.length < length)
+	    frame = new byte[Math.max(length, frame.length * 2)];
+	int read = 0;
+	while (read < length) {
+	    int n = in.read(frame, read, length - read);
+	    if (n < 0)
+		throw new EOFException("Truncated frame");
+	    read += n;
+	}
+	position = 0;
+	limit = length;
+	return true;
+    }
+
+    private int nextOptionIndex() throws IOException {
+	int index = nextVarint();
+	if (index == 0) {
+	    return options.id(nextString());
+	}
+	return index <= options.declared() ? options.canonical(index - 1) : -1;
+    }
+
+    private void writeOption(String option) throws IOException {
+	int id = options.id(option);
+	if (id >= 0 && id < options.declared()) {
+	    writeVarint(payload, id + 1);
+	} else {
+	    writeVarint(payload, 0);
+	    writeString(payload, option);
+	}
+    }
+
+    /**
+     * Writes option {@code id} of {@code table} as its index in the shared
+     * option list, or by name if the peer cannot know it by index.
+     */
+    private void writeOption(int id, OptionTable table) throws IOException {
+	if (table == options && id < options.declared())
+	    writeVarint(payload, id + 1);
+	else
+	    writeOption(table.name(id));
+    }
+
+    private String nextOption() throws IOException {
+	int index = nextVarint();
+	if (index == 0)
+	    return nextString();
+	if (index > options.declared())
+	    throw new IOException("Unknown option index " + index);
+	return options.name(index - 1);
+    }
+
+    private String nextString() throws IOException {
+	int length = nextVarint();
+	if (length < 0 || length > limit - position)
+	    throw new IOException("Truncated frame");
+	String s = new String(frame, position, length, StandardCharsets.UTF_8);
+	position += length;
+	return s;
+    }
+
+    private int nextByte() throws IOException {
+	if (position >= limit)
+	    throw new IOException("Truncated frame");
+	return frame[position++];
+    }
+
+    /**
+     * Reads the number of elements that follow; each takes at least one
+     * byte, so a count larger than what is left of the frame is corrupt.
+     */
+    private int nextCount() throws IOException {
+	int count = nextVarint();
+	if (count < 0 || count > limit - position)
+	    throw new IOException("Count " + count + " runs past the end of the frame");
+	return count;
+    }
+
+    private int nextVarint() throws IOException {
+	int value = 0;
+	for (int shift = 0; shift < 35; shift += 7) {
+	    if (position >= limit)
+		throw new IOException("Truncated frame");
+	    int b = frame[position++];
+	    value |= (b & 0x7f) << shift;
+	    if ((b & 0x80) == 0)
+		return value;
+	}
+	throw new IOException("Malformed varint");
+    }
+
+    private static void writeString(OutputStream out, String s) throws IOException {
+	byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+	writeVarint(out, bytes.length);
+	out.write(bytes);
+    }
+
+    static void writeVarint(OutputStream out, int value) throws IOException {
+	while ((value & ~0x7f) != 0) {
+	    out.write((value & 0x7f) | 0x80);
+	    value >>>= 7;
+	}
+	out.write(value);
+    }
+
+    static int readVarint(InputStream in) throws IOException {
+	int value = 0;
+	for (int shift = 0; shift < 35; shift += 7) {
+	    int b = in.read();
+	    if (b < 0)
+		throw new EOFException();
+	    value |= (b & 0x7f) << shift;
+	    if ((b & 0x80) == 0)
+		return value;
+	}
+	throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Reads a newline-terminated line straight off {@code in} without
+     * buffering past it, so the stream can switch framing afterwards.
+     */
+    static String readLine(InputStream in) throws IOException {
+	ByteArrayOutputStream line = new ByteArrayOutputStream(32);
+	int b;
+	while ((b = in.read()) >= 0 && b != '\n')
+	    line.write(b);
+	if (b < 0 && line.size() == 0)
+	    return null;
+	String s = line.toString();
+	return s.endsWith("\r") ? s.substring(0, s.length() - 1) : s;
+    }
+}
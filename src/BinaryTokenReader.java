@@ -0,0 +1,19 @@
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the binary frames of {@link BinaryCodec} off a connection.
+ */
+class BinaryTokenReader implements TokenReader {
+    private final InputStream in;
+    private final BinaryCodec codec;
+
+    BinaryTokenReader(InputStream in, BinaryCodec codec) {
+	this.in = in;
+	this.codec = codec;
+    }
+
+    public boolean read(ParsedToken token) throws IOException {
+	return codec.decode(in, token);
+    }
+}
@@ -0,0 +1,23 @@
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes requests to a connection as the binary frames of {@link BinaryCodec}.
+ */
+class BinaryTokenWriter implements TokenWriter {
+    private final OutputStream out;
+    private final BinaryCodec codec;
+
+    BinaryTokenWriter(OutputStream out, BinaryCodec codec) {
+	this.out = out;
+	this.codec = codec;
+    }
+
+    public void write(Token token) throws IOException {
+	codec.encode(token, out);
+    }
+
+    public void flush() throws IOException {
+	out.flush();
+    }
+}
@@ -1,18 +1,28 @@
-
-import java.net.ServerSocket;
-import java.net.Socket;
-
 import java.io.BufferedReader;
 import java.io.PrintWriter;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.IOException;
 
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class Coordinator
 {
@@ -22,40 +32,312 @@ public class Coordinator
     private int _numOfClients;
     private int timeOut;
     private List<String> options;
-    private volatile List<Integer> participantIds;
-    private ServerSocket listener;
+    private boolean sessionMode;
+    private Map<Integer, Ballot> ballots;
+    /** the sessions a ballot may be hosted for; only these are accepted in session mode */
+    private Map<Integer, Session> sessions;
+    private Transport transport;
+    private Transport.Listener listener;
     private CoordinatorLogger logger;
-    private List<CoordinatorThread> threads;
+    private List<Thread> threads;
     private ReqTokenizer tokenizer;
-    private List<String> outcomeList;
+    private volatile WriteAheadLog wal;
+    private final ReentrantLock finishing = new ReentrantLock();
+    /** logs declared and disagreeing outcomes, in the order they happen, off the thread that completes them */
+    private final ExecutorService outcomeLog = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "outcome-log");
+        thread.setDaemon(true);
+        return thread;
+    });
 
 
     public Coordinator(int coordinatorPort, int loggerServerPort, int maxParticipants, int timeOut, String options) throws Exception {
+        this(coordinatorPort, loggerServerPort, maxParticipants, timeOut, options, Transport.fromSystemProperties());
+    }
+
+    /**
+     * @param transport what participants connect over; {@link #startSelecting()} needs TCP
+     */
+    public Coordinator(int coordinatorPort, int loggerServerPort, int maxParticipants, int timeOut, String options,
+                       Transport transport) throws Exception {
+        this.transport = transport;
         this.coordinatorPort = coordinatorPort;
         this.loggerServerPort = loggerServerPort;
         this.maxParticipants = maxParticipants;
         this._numOfClients = 0;
         this.timeOut = timeOut;
         this.options = convertToList(options);
-        this.outcomeList = Collections.synchronizedList(new ArrayList<>());
-        participantIds = Collections.synchronizedList(new ArrayList<>());
+        this.sessionMode = false;
         CoordinatorLogger.initLogger(loggerServerPort, coordinatorPort, timeOut);
         logger = CoordinatorLogger.getLogger();
+        ballots = new ConcurrentHashMap<>();
+        ballots.put(0, newBallot(0, maxParticipants, this.options));
+        sessions = new ConcurrentHashMap<>();
+        sessions.put(0, new Session(maxParticipants, this.options));
         tokenizer = new ReqTokenizer();
         threads = new ArrayList<>();
+        wal = WriteAheadLog.fromSystemProperties("coordinator_" + coordinatorPort);
+    }
+
+    /**
+     * Keeps the listener open indefinitely and hosts one independent ballot
+     * per session id. Only session 0, with the default options and quota,
+     * and the sessions declared with {@link #openSession(int, int, String)}
+     * are hosted; a JOIN tagged with any other session is turned away, so
+     * clients cannot make the Coordinator open ballots nobody configured.
+     * A finished ballot opens again under its id with the same settings.
+     */
+    public void enableSessions() {
+        sessionMode = true;
+    }
+
+    /**
+     * Declares a ballot with its own options and participant quota.
+     */
+    public void openSession(int sessionId, int maxParticipants, String options) {
+        Session session = new Session(maxParticipants, convertToList(options));
+        sessions.put(sessionId, session);
+        ballots.put(sessionId, newBallot(sessionId, session.maxParticipants, session.options));
+    }
+
+    /**
+     * @return the declared result of the ballot for {@code sessionId}, or null if there is no such ballot
+     */
+    public CompletableFuture<OutcomeAggregator.Result> result(int sessionId) {
+        Ballot ballot = ballots.get(sessionId);
+        return ballot == null ? null : ballot.getOutcomes().result();
+    }
+
+    /**
+     * Creates a ballot whose result is logged as soon as it is declared.
+     * Unless -Dcoordinator.outcomeTimeout says otherwise, the result is
+     * awaited for as long as the participants may need to connect (their
+     * default setup timeout) and run every round of the exchange.
+     */
+    private Ballot newBallot(int sessionId, int maxParticipants, List<String> options) {
+        long outcomeTimeout = Long.getLong("coordinator.outcomeTimeout", 10000L + (long) timeOut * (maxParticipants + 1));
+        OutcomeAggregator outcomes = new OutcomeAggregator(maxParticipants,
+                OutcomeAggregator.quorumFromSystemProperties(maxParticipants), outcomeTimeout);
+        // Async: these complete under the Ballot's lock, and logging waits for the logger server.
+        outcomes.disagreement().thenAcceptAsync(tallies -> logger.outcomesDisagree(sessionId, tallies), outcomeLog);
+        outcomes.result().thenAcceptAsync(result -> logger.outcomeDeclared(sessionId, result.getOutcome(),
+                result.getAgreeing(), result.getParticipants(), result.isQuorumReached()), outcomeLog);
+        return new Ballot(sessionId, maxParticipants, options, outcomes);
+    }
+
+    /**
+     * Waits until every outcome declared so far has been logged. Outcomes
+     * are logged on a daemon thread, which would not keep the JVM alive for
+     * them once the last participant's handler is done.
+     */
+    public void awaitOutcomesLogged() throws InterruptedException {
+        try {
+            // The log thread runs tasks in order, so this one finishes last.
+            outcomeLog.submit(() -> { }).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the ballot a JOIN for {@code sessionId} belongs to, or null if it cannot be hosted
+     */
+    public Ballot ballotFor(int sessionId) {
+        if (!sessionMode)
+            return sessionId == 0 ? ballots.get(0) : null;
+        Session session = sessions.get(sessionId);
+        if (session == null)
+            return null;
+        return ballots.computeIfAbsent(sessionId, id -> newBallot(id, session.maxParticipants, session.options));
+    }
+
+    private void participantFinished(Ballot ballot) {
+        if (!ballot.isFinished())
+            return;
+        // Not a monitor: deleting the WAL waits for its committer, which would pin a virtual thread.
+        finishing.lock();
+        try {
+            if (sessionMode) {
+                if (ballots.remove(ballot.getSessionId(), ballot))
+                    walAppend("DONE " + ballot.getSessionId());
+            } else if (wal != null) {
+                // The only ballot is over; there is nothing left to resume.
+                try {
+                    wal.delete();
+                } catch (IOException | InterruptedException e) {
+                    e.printStackTrace();
+                }
+                wal = null;
+            }
+        } finally {
+            finishing.unlock();
+        }
+    }
+
+    /**
+     * Rebuilds the ballots that a previous run on this port left in its
+     * write-ahead log (-Dwal.dir). The participants that had not finished
+     * join again to report their outcome, and only they are waited for.
+     * Call after the sessions have been set up.
+     */
+    public void recover() {
+        if (wal == null)
+            return;
+        List<String> records = new ArrayList<>(wal.recoveredCheckpoint());
+        records.addAll(wal.recoveredRecords());
+        for (String record: records) {
+            String[] fields = record.split(" ");
+            int sessionId = Integer.parseInt(fields[1]);
+            if (fields[0].equals("DONE")) {
+                ballots.remove(sessionId);
+                continue;
+            }
+            Ballot ballot = ballotFor(sessionId);
+            if (ballot == null)
+                continue;
+            int id = Integer.parseInt(fields[2]);
+            switch (fields[0]) {
+                case "JOIN":
+                    ballot.join(id);
+                    break;
+                case "OUTCOME":
+                    ballot.outcomeReceived(id, fields[3]);
+                    break;
+                case "CRASH":
+                    ballot.participantCrashed(id);
+                    break;
+            }
+        }
+        Ballot defaultBallot = ballots.get(0);
+        if (!sessionMode && defaultBallot != null)
+            _numOfClients = defaultBallot.finishedCount();
+        for (Ballot ballot: new ArrayList<>(ballots.values()))
+            participantFinished(ballot);
+    }
+
+    /**
+     * Queues a ballot state change for the write-ahead log, if there is one,
+     * and takes a checkpoint when one is due.
+     *
+     * @return the sequence number to pass to {@link #walSync(long)}
+     */
+    private long walAppend(String record) {
+        WriteAheadLog wal = this.wal;
+        if (wal == null)
+            return 0;
+        long sequence = wal.append(record);
+        if (wal.needsCheckpoint()) {
+            try {
+                wal.checkpoint(this::snapshot);
+            } catch (IOException | InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+        return sequence;
+    }
+
+    /**
+     * Waits until the record numbered {@code sequence} is on disk.
+     */
+    private void walSync(long sequence) {
+        WriteAheadLog wal = this.wal;
+        if (wal == null || sequence == 0)
+            return;
+        try {
+            wal.sync(sequence);
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private List<String> snapshot() {
+        List<String> records = new ArrayList<>();
+        for (Ballot ballot: ballots.values())
+            ballot.snapshot(records);
+        return records;
     }
 
     public void startListening() throws IOException {
-        listener = new ServerSocket(coordinatorPort);
+        listener = transport.listen(coordinatorPort);
         logger.startedListening(coordinatorPort);
         while (!fullCapacity()) {
-            Socket client = listener.accept();
-            logger.connectionAccepted(client.getPort());
+            Transport.Connection client = listener.accept(0);
+            logger.connectionAccepted(client.getRemotePort());
             _numOfClients++;
-            new CoordinatorThread(client).start();
+            Thread thread = Threads.start("coordinator-" + client.getRemotePort(), new CoordinatorThread(client), false);
+            if (!sessionMode)
+                threads.add(thread);
+        }
+        // Virtual threads do not keep the JVM alive, so wait here for the outcomes.
+        try {
+            for (Thread thread: threads)
+                thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
+    /**
+     * Event-driven alternative to {@link #startListening()}: a single selector
+     * thread accepts every participant and handles JOIN, DETAILS, VOTE_OPTIONS
+     * and OUTCOME over non-blocking channels, so no thread is parked or
+     * spinning per connection. Returns once every channel has been closed.
+     * Works on TCP only.
+     */
+    public void startSelecting() throws IOException {
+        if (!(transport instanceof TcpTransport))
+            throw new IllegalStateException("The selector loop needs -Dtransport=tcp");
+        Selector selector = Selector.open();
+        TcpTransport tcp = (TcpTransport) transport;
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        if (tcp.getReceiveBuffer() > 0)
+            serverChannel.setOption(StandardSocketOptions.SO_RCVBUF, tcp.getReceiveBuffer());
+        serverChannel.bind(new InetSocketAddress(coordinatorPort));
+        serverChannel.configureBlocking(false);
+        SelectionKey acceptKey = serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        logger.startedListening(coordinatorPort);
+
+        List<ParticipantChannel> channels = new ArrayList<>();
+        while (acceptKey.isValid() || !channels.isEmpty()) {
+            selector.select();
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (!key.isValid())
+                    continue;
+                if (key.isAcceptable()) {
+                    SocketChannel client = serverChannel.accept();
+                    if (client == null)
+                        continue;
+                    client.configureBlocking(false);
+                    tcp.configure(client.socket());
+                    ParticipantChannel channel = new ParticipantChannel(client);
+                    channel.key = client.register(selector, SelectionKey.OP_READ, channel);
+                    channels.add(channel);
+                    logger.connectionAccepted(channel.remotePort);
+                    _numOfClients++;
+                    if (fullCapacity()) {
+                        acceptKey.cancel();
+                        serverChannel.close();
+                    }
+                    continue;
+                }
+                ParticipantChannel channel = (ParticipantChannel) key.attachment();
+                try {
+                    if (key.isReadable())
+                        channel.read(channels);
+                    if (key.isValid() && key.isWritable())
+                        channel.write();
+                } catch (IOException e) {
+                    channel.crashed();
+                }
+            }
+            channels.removeIf(ParticipantChannel::isClosed);
+        }
+        selector.close();
+    }
+
     public List<String> convertToList(String optionList) {
         List<String> list = new ArrayList<>();
         StringTokenizer tokenizer = new StringTokenizer(optionList);
@@ -66,30 +348,47 @@ public class Coordinator
     }
 
     public boolean fullCapacity() {
-        if (_numOfClients >= maxParticipants)
+        if (!sessionMode && _numOfClients >= maxParticipants)
             return true;
         else
             return false;
     }
 
+    /**
+     * The quota and options a session's ballot is opened with.
+     */
+    private static class Session {
+
+        final int maxParticipants;
+        final List<String> options;
+
+        Session(int maxParticipants, List<String> options) {
+            this.maxParticipants = maxParticipants;
+            this.options = options;
+        }
+    }
+
     /**
      * For each client we create a thread that handles
-     * all i/o with that client.
+     * all i/o with that client; see {@link Threads}.
      */
-    private class CoordinatorThread extends Thread {
+    private class CoordinatorThread implements Runnable {
 
         private int id;
         private int remotePort;
         private int localPort;
-        private Socket clientSocket;
+        private Ballot ballot;
+        private Transport.Connection clientSocket;
         private BufferedReader in;
         private PrintWriter out;
+        private long joinedAt;
+        private long optionsSentAt;
 
-        public CoordinatorThread(Socket client) throws IOException {
+        public CoordinatorThread(Transport.Connection client) throws IOException {
             clientSocket = client;
             in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-            out = new PrintWriter(new OutputStreamWriter(clientSocket.getOutputStream()), true);
-            remotePort = client.getPort();
+            out = new PrintWriter(new OutputStreamWriter(clientSocket.getOutputStream()));
+            remotePort = client.getRemotePort();
         }
 
         public void receiveJoin() throws IOException {
@@ -101,53 +400,62 @@ public class Coordinator
                     clientSocket.close();
                     return;
                 }
+                Ballot candidate = ballotFor(token._session);
+                if (candidate == null || !candidate.join(((JoinToken) token)._id)) {
+                    clientSocket.close();
+                    return;
+                }
                 id = ((JoinToken) token)._id;
-                participantIds.add(id);
+                ballot = candidate;
+                joinedAt = System.nanoTime();
                 logger.joinReceived(id);
+                walSync(walAppend("JOIN " + token._session + " " + id));
             } catch (SocketException | SocketTimeoutException e2) {
                 System.exit(0);
             }
         }
         public void sendDetails() {
-            String msg = "DETAILS";
-            List<Integer> participantPorts = new ArrayList<>();
-            List<Integer> temp = new ArrayList<>(participantIds);
-
-            for (Integer currentId: temp) {
-                if (currentId != id) {
-                    msg += " " + currentId;
-                    participantPorts.add(currentId);
-                }
-            }
-            out.println(msg);
+            List<Integer> participantPorts = ballot.otherParticipants(id);
+            DetailsToken msg = ballot.details(participantPorts);
+            out.println(msg.message());
             logger.messageSent(remotePort, msg);
             logger.detailsSent(id, participantPorts);
         }
 
         public void sendVoteOptions() {
-            String msg = "VOTE_OPTIONS";
-            for (String option: options) {
-                msg += " " + option;
-            }
-            out.println(msg);
+            VoteOptionsToken msg = ballot.voteOptions();
+            out.println(msg.message());
             logger.messageSent(remotePort, msg);
-            logger.voteOptionsSent(id, options);
+            logger.voteOptionsSent(id, ballot.getOptions());
         }
 
         public void receiveOutcome() throws IOException {
+            boolean reported = false;
             try {
                 String msg = in.readLine();
+                if (msg == null)
+                    // Closed without an OUTCOME, as a crashed participant's connection is.
+                    throw new SocketException("Connection closed by participant " + id);
                 logger.messageReceived(remotePort, msg);
                 Token token = tokenizer.getToken(msg);
                 if (token instanceof OutcomeToken) {
                     String outcome = ((OutcomeToken) token).outcome;
-                    outcomeList.add(outcome);
+                    Metrics.COORDINATOR_OUTCOME.recordSince(optionsSentAt);
+                    if (ballot.outcomeReceived(id, outcome))
+                        walSync(walAppend("OUTCOME " + ballot.getSessionId() + " " + id + " " + outcome));
+                    reported = true;
                     logger.outcomeReceived(id, outcome);
                 }
             }
             catch (SocketException e) {
+                Metrics.CRASHES.increment();
                 logger.participantCrashed(id);
             }
+            finally {
+                if (!reported && ballot.participantCrashed(id))
+                    walAppend("CRASH " + ballot.getSessionId() + " " + id);
+                participantFinished(ballot);
+            }
         }
 
         public void run() {
@@ -156,18 +464,179 @@ public class Coordinator
             } catch (IOException e) {
                 e.printStackTrace();
             }
-            while (true) {
-                if (participantIds.size() == maxParticipants) {
-                    sendDetails();
-                    sendVoteOptions();
-                    try {
-                        receiveOutcome();
-                    } catch (IOException e) {
-                        e.printStackTrace();
+            if (ballot == null)
+                return;
+            try {
+                ballot.awaitFull();
+            } catch (InterruptedException e) {
+                return;
+            }
+            Metrics.JOIN_WAIT.recordSince(joinedAt);
+            long fanOutStartedAt = System.nanoTime();
+            sendDetails();
+            sendVoteOptions();
+            // DETAILS and VOTE_OPTIONS leave together in one send.
+            out.flush();
+            optionsSentAt = System.nanoTime();
+            Metrics.FAN_OUT.record(optionsSentAt - fanOutStartedAt);
+            try {
+                receiveOutcome();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Per-connection state for {@link #startSelecting()}: buffers partial
+     * lines on the way in and pending bytes on the way out.
+     */
+    private class ParticipantChannel {
+
+        private final SocketChannel channel;
+        private final int remotePort;
+        private SelectionKey key;
+        private ByteBuffer in = ByteBuffer.allocate(1024);
+        private final Deque<ByteBuffer> out = new ArrayDeque<>();
+        private int id = -1;
+        private Ballot ballot;
+        private boolean outcomeReceived = false;
+        private long joinedAt;
+        private long fanOutStartedAt;
+        private long optionsSentAt;
+
+        ParticipantChannel(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            this.remotePort = ((InetSocketAddress) channel.getRemoteAddress()).getPort();
+        }
+
+        void read(List<ParticipantChannel> channels) throws IOException {
+            if (!in.hasRemaining()) {
+                ByteBuffer larger = ByteBuffer.allocate(in.capacity() * 2);
+                in.flip();
+                larger.put(in);
+                in = larger;
+            }
+            if (channel.read(in) < 0) {
+                crashed();
+                return;
+            }
+            in.flip();
+            int start = 0;
+            for (int i = in.position(); i < in.limit(); i++) {
+                if (in.get(i) != '\n')
+                    continue;
+                int end = (i > start && in.get(i - 1) == '\r') ? i - 1 : i;
+                String msg = new String(in.array(), start, end - start, Charset.defaultCharset());
+                start = i + 1;
+                handle(msg, channels);
+                if (isClosed())
+                    return;
+            }
+            in.position(start);
+            in.compact();
+        }
+
+        void handle(String msg, List<ParticipantChannel> channels) throws IOException {
+            logger.messageReceived(remotePort, msg);
+            Token token = tokenizer.getToken(msg);
+            if (id < 0) {
+                if (!(token instanceof JoinToken)) {
+                    close();
+                    return;
+                }
+                Ballot candidate = ballotFor(token._session);
+                // Only a participant that already had a place can join a full ballot.
+                boolean rejoined = candidate != null && candidate.isFull();
+                if (candidate == null || !candidate.join(((JoinToken) token)._id)) {
+                    close();
+                    return;
+                }
+                id = ((JoinToken) token)._id;
+                ballot = candidate;
+                joinedAt = System.nanoTime();
+                logger.joinReceived(id);
+                long logged = walAppend("JOIN " + token._session + " " + id);
+                if (rejoined) {
+                    walSync(logged);
+                    sendDetailsAndOptions();
+                } else if (ballot.isFull()) {
+                    // One sync covers the JOIN of every participant of the ballot.
+                    walSync(logged);
+                    for (ParticipantChannel joined: channels) {
+                        if (joined.ballot == ballot && !joined.isClosed())
+                            joined.sendDetailsAndOptions();
                     }
-                    break;
                 }
+            } else if (token instanceof OutcomeToken) {
+                String outcome = ((OutcomeToken) token).outcome;
+                Metrics.COORDINATOR_OUTCOME.recordSince(optionsSentAt);
+                // Not waited for, so as not to stall the selector; the next group commit writes it.
+                if (ballot.outcomeReceived(id, outcome))
+                    walAppend("OUTCOME " + ballot.getSessionId() + " " + id + " " + outcome);
+                outcomeReceived = true;
+                logger.outcomeReceived(id, outcome);
+                participantFinished(ballot);
+                close();
+            }
+        }
+
+        void sendDetailsAndOptions() {
+            Metrics.JOIN_WAIT.recordSince(joinedAt);
+            fanOutStartedAt = System.nanoTime();
+            List<Integer> participantPorts = ballot.otherParticipants(id);
+            DetailsToken details = ballot.details(participantPorts);
+            VoteOptionsToken voteOptions = ballot.voteOptions();
+            queue(details.message());
+            logger.messageSent(remotePort, details);
+            logger.detailsSent(id, participantPorts);
+            queue(voteOptions.message());
+            logger.messageSent(remotePort, voteOptions);
+            logger.voteOptionsSent(id, ballot.getOptions());
+        }
+
+        void queue(String msg) {
+            out.add(ByteBuffer.wrap((msg + System.lineSeparator()).getBytes(Charset.defaultCharset())));
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+
+        void write() throws IOException {
+            // Whatever is queued, DETAILS and VOTE_OPTIONS at fan-out, goes in one gathering write.
+            channel.write(out.toArray(new ByteBuffer[0]));
+            while (!out.isEmpty() && !out.peek().hasRemaining())
+                out.poll();
+            if (!out.isEmpty())
+                return;
+            if (fanOutStartedAt != 0) {
+                optionsSentAt = System.nanoTime();
+                Metrics.FAN_OUT.record(optionsSentAt - fanOutStartedAt);
+                fanOutStartedAt = 0;
             }
+            key.interestOps(SelectionKey.OP_READ);
+        }
+
+        void crashed() {
+            if (id >= 0 && !outcomeReceived) {
+                Metrics.CRASHES.increment();
+                logger.participantCrashed(id);
+                if (ballot.participantCrashed(id))
+                    walAppend("CRASH " + ballot.getSessionId() + " " + id);
+                participantFinished(ballot);
+            }
+            close();
+        }
+
+        void close() {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        boolean isClosed() {
+            return !channel.isOpen();
         }
     }
 
@@ -183,8 +652,26 @@ public class Coordinator
             options += " " + args[i];
         }
 
+        Metrics.exportFromSystemProperties();
         Coordinator coordinator = new Coordinator(coordinatorPort, loggerServerPort, maxParticipants, timeOut, options);
-        coordinator.startListening();
+        if (Boolean.getBoolean("coordinator.sessions")) {
+            coordinator.enableSessions();
+            // e.g. -Dcoordinator.ballots="7=3:A B C;8=5:X Y"
+            String ballots = System.getProperty("coordinator.ballots", "");
+            for (String ballot: ballots.split(";")) {
+                if (ballot.isBlank())
+                    continue;
+                String[] idAndRest = ballot.split("=", 2);
+                String[] quotaAndOptions = idAndRest[1].split(":", 2);
+                coordinator.openSession(Integer.parseInt(idAndRest[0].trim()), Integer.parseInt(quotaAndOptions[0].trim()), quotaAndOptions[1]);
+            }
+        }
+        coordinator.recover();
+        if (Boolean.getBoolean("coordinator.nio"))
+            coordinator.startSelecting();
+        else
+            coordinator.startListening();
+        coordinator.awaitOutcomesLogged();
     }
 }
 
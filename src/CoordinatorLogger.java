@@ -1,6 +1,7 @@
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 public class CoordinatorLogger {
@@ -9,6 +10,13 @@ public class CoordinatorLogger {
 	
 	private final PrintStream ps;
 	private final UDPLoggerClient udpLoggerClient;
+	private final AsyncLogPipeline pipeline;
+	private final LogFilter filter;
+	private final boolean messages;
+	private final boolean connections;
+	private final boolean protocol;
+	private final boolean outcomes;
+	private final boolean faults;
 	
 	/**
 	 * Initialises the Logger for the Coordinator
@@ -37,25 +45,79 @@ public class CoordinatorLogger {
 	private CoordinatorLogger(int loggerServerPort, int processId, int timeout) throws Exception {
 		udpLoggerClient = new UDPLoggerClient(loggerServerPort, processId, timeout);
 		ps = new PrintStream("coordinator_" + System.currentTimeMillis() + ".log");
+		pipeline = AsyncLogPipeline.fromSystemProperties("coordinator", this::writeBatch);
+		filter = LogFilter.fromSystemProperties();
+		messages = filter.isEnabled(LogFilter.Category.MESSAGE);
+		connections = filter.isEnabled(LogFilter.Category.CONNECTION);
+		protocol = filter.isEnabled(LogFilter.Category.PROTOCOL);
+		outcomes = filter.isEnabled(LogFilter.Category.OUTCOME);
+		faults = filter.isEnabled(LogFilter.Category.FAULT);
+		Runtime.getRuntime().addShutdownHook(new Thread(this::close));
 	}
 	
+	/**
+	 * For callers that would have to build an event's arguments just to log
+	 * it; the event methods check this themselves before formatting.
+	 *
+	 * @return whether events of {@code category} are written
+	 */
+	public boolean isEnabled(LogFilter.Category category) {
+		return filter.isEnabled(category);
+	}
+
 	protected void logMessage(String message) {
+		if (pipeline != null) {
+			pipeline.publish(message);
+			return;
+		}
 		ps.println(message);
 		if (udpLoggerClient != null)
 			try {
 				udpLoggerClient.logToServer(message);
 			} catch (IOException e) {
-				ps.println("[C] Exception caught: " + e.getMessage());
-				ps.println("[C] Stack trace: " + e.getStackTrace());
+				logException(e);
+			}
+	}
+
+	/**
+	 * Drainer side of the async pipeline: one local write and as few
+	 * datagrams as the batch fits in.
+	 */
+	private void writeBatch(List<String> messages) {
+		for (String message: messages)
+			ps.println(message);
+		ps.flush();
+		if (udpLoggerClient != null)
+			try {
+				udpLoggerClient.logBatchToServer(messages);
+			} catch (IOException e) {
+				logException(e);
 			}
 	}
 
+	/**
+	 * Drains pending lines, then waits for the logger server to acknowledge them.
+	 */
+	private void close() {
+		if (pipeline != null)
+			pipeline.close();
+		udpLoggerClient.close();
+		ps.flush();
+	}
+
+	private void logException(IOException e) {
+		ps.println("[C] Exception caught: " + e.getMessage());
+		ps.println("[C] Stack trace: " + e.getStackTrace());
+	}
+
 	/**
 	 * To be invoked when the Coordinator starts listening for incoming TCP connections
 	 * 
 	 * @param port the port where the Coordinator is listening on
 	 */
 	public void startedListening(int port) {
+		if (!connections)
+			return;
 		logMessage("[C] started listening on port " + port);
 	}
 	
@@ -65,6 +127,8 @@ public class CoordinatorLogger {
 	 * @param participantId the ID of the Participant that joined, i.e. the port where the Participant is listening on 
 	 */
 	public void joinReceived(int participantId) {
+		if (!protocol)
+			return;
 		logMessage("[C] JOIN received from " + participantId);
 	}
 	
@@ -75,6 +139,8 @@ public class CoordinatorLogger {
 	 * @param participantIds the list of IDs of the Participants that joined
 	 */
 	public void detailsSent(int destinationParticipantId, List<Integer> participantIds) {
+		if (!protocol)
+			return;
 		logMessage("[C] details sent to " + destinationParticipantId + ": " + participantIds.stream().map(Object::toString).collect(Collectors.joining(", ")));
 	}
 	
@@ -85,6 +151,8 @@ public class CoordinatorLogger {
 	 * @param votingOptions the list of voting options
 	 */
 	public void voteOptionsSent(int destinationParticipantId, List<String> votingOptions) {
+		if (!protocol)
+			return;
 		logMessage("[C] vote options sent to " + destinationParticipantId + ": " + votingOptions.stream().map(Object::toString).collect(Collectors.joining(", ")));
 	}
 	
@@ -95,15 +163,47 @@ public class CoordinatorLogger {
 	 * @param vote the voting option sent by the Participant
 	 */
 	public void outcomeReceived(int participantId, String vote) {
+		if (!outcomes)
+			return;
 		logMessage("[C] outcome " + vote + " received from " + participantId);
 	}
 	
+	/**
+	 * To be invoked when the Coordinator declares the result of a ballot
+	 * 
+	 * @param sessionId the ballot's session, 0 for the default ballot
+	 * @param vote the outcome reported by most Participants, or null if none was reported
+	 * @param agreeing the number of Participants that reported it
+	 * @param participants the number of Participants in the ballot
+	 * @param quorumReached whether enough Participants agreed for the outcome to be decided
+	 */
+	public void outcomeDeclared(int sessionId, String vote, int agreeing, int participants, boolean quorumReached) {
+		if (!outcomes)
+			return;
+		logMessage("[C] outcome " + vote + " declared by " + agreeing + " of " + participants + " participants"
+				+ (quorumReached ? "" : " without a quorum") + " in session " + sessionId);
+	}
+	
+	/**
+	 * To be invoked when two Participants of a ballot report different outcomes
+	 * 
+	 * @param sessionId the ballot's session, 0 for the default ballot
+	 * @param tallies how many Participants reported each outcome so far
+	 */
+	public void outcomesDisagree(int sessionId, Map<String, Integer> tallies) {
+		if (!faults)
+			return;
+		logMessage("[C] participants disagree on the outcome in session " + sessionId + ": " + tallies);
+	}
+	
 	/**
 	 * To be invoked when a Participant establishes a TCP connection with the Coordinator
 	 * 
 	 * @param otherPort the remote port number to which this socket is connected; note that this is different from the Participant ID 
 	 */
 	public void connectionAccepted(int otherPort) {
+		if (!connections)
+			return;
 		logMessage("[C] accepted connection from port " + otherPort);
 	}
 	
@@ -114,9 +214,23 @@ public class CoordinatorLogger {
 	 * @param message the message sent
 	 */
 	public void messageSent(int destinationPort, String message) {
+		if (!messages)
+			return;
 		logMessage("[C] message sent to " + destinationPort + ": \"" + message + "\"");
 	}
 	
+	/**
+	 * To be invoked when the Coordinator sends a TCP message to a Participant
+	 * 
+	 * @param destinationPort the remote port number to which the message is sent; note that this is different from the Participant ID
+	 * @param message the message sent, rendered as text only if messages are logged
+	 */
+	void messageSent(int destinationPort, Token message) {
+		if (!messages)
+			return;
+		messageSent(destinationPort, message.message());
+	}
+	
 	/**
 	 * To be invoked when the Coordinator receives a TCP message from a Participant
 	 * 
@@ -124,6 +238,8 @@ public class CoordinatorLogger {
 	 * @param message the message received
 	 */
 	public void messageReceived(int senderPort, String message) {
+		if (!messages)
+			return;
 		logMessage("[C] message received from " + senderPort + ": \"" + message + "\"");
 	}
 	
@@ -134,6 +250,8 @@ public class CoordinatorLogger {
 	 * @param crashedParticipantId the ID of the crashed Participant, i.e. the port where the crashed Participant was listening on
 	 */
 	public void participantCrashed(int crashedParticipantId) {
+		if (!faults)
+			return;
 		logMessage("[C] participant crashed: " + crashedParticipantId);
 	}
 }
@@ -0,0 +1,17 @@
+/**
+ * Syntax: DONE
+ *
+ * The last message on a connection between participants: the sender has
+ * finished the vote exchange and will send nothing more, so the receiver
+ * stops waiting for it without counting it as crashed.
+ */
+class DoneToken extends Token {
+
+	DoneToken(String req) {
+		this._req = req;
+	}
+
+	String render() {
+		return "DONE";
+	}
+}
@@ -0,0 +1,67 @@
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Faults a Participant injects into itself for load and failure testing,
+ * configured with system properties and off by default:
+ * -Dfault.crashAtRound=R halts the JVM, with no clean-up, as round R
+ * begins; -Dfault.delayMillis=D holds back every round's VOTE messages by
+ * D milliseconds, plus up to -Dfault.jitterMillis more, to stand in for a
+ * slow network.
+ *
+ * When participants share a JVM, -Dfault.crashPorts=P,... limits the crash
+ * to the participants listening on those ports, and instead of halting the
+ * JVM each of them is crashed on its own: every connection it holds is
+ * closed, which is all its peers and the Coordinator see of a halted
+ * process, and its exchange ends without reporting anything.
+ */
+final class FaultInjector {
+
+    private static final int CRASH_AT_ROUND = Integer.getInteger("fault.crashAtRound", 0);
+    private static final Set<Integer> CRASH_PORTS = ports(System.getProperty("fault.crashPorts", ""));
+    private static final long DELAY_MILLIS = Long.getLong("fault.delayMillis", 0);
+    private static final long JITTER_MILLIS = Long.getLong("fault.jitterMillis", 0);
+
+    /**
+     * Thrown out of the round a participant crashed in, to end its exchange.
+     */
+    static final class Crash extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        Crash(int port) {
+            super("Participant " + port + " crashed by fault injection");
+        }
+    }
+
+    private FaultInjector() { }
+
+    /**
+     * Called as a round begins, before its votes are sent.
+     *
+     * @param port the port of the participant whose round it is
+     * @param crash closes the participant's connections, for a crash with -Dfault.crashPorts
+     */
+    static void beforeRound(int port, int round, Runnable crash) throws InterruptedException, Crash {
+        if (round == CRASH_AT_ROUND) {
+            if (CRASH_PORTS.isEmpty())
+                Runtime.getRuntime().halt(1);
+            if (CRASH_PORTS.contains(port)) {
+                crash.run();
+                throw new Crash(port);
+            }
+        }
+        if (DELAY_MILLIS > 0 || JITTER_MILLIS > 0)
+            Thread.sleep(DELAY_MILLIS + (JITTER_MILLIS > 0 ? ThreadLocalRandom.current().nextLong(JITTER_MILLIS + 1) : 0));
+    }
+
+    private static Set<Integer> ports(String list) {
+        Set<Integer> ports = new HashSet<>();
+        for (String port: list.split(",")) {
+            if (!port.trim().isEmpty())
+                ports.add(Integer.parseInt(port.trim()));
+        }
+        return ports;
+    }
+}
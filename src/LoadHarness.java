@@ -0,0 +1,471 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Runs whole ballots on loopback and reports how they performed: a logger
+ * server, a Coordinator hosting every ballot as a session, and one JVM per
+ * Participant, all started from this process's class path.
+ *
+ * Ballots run -concurrent at a time until -ballots have run. With
+ * -crash R:K the first K participants of each ballot halt as round R
+ * begins, and -delay/-jitter hold back every round's VOTE messages (see
+ * {@link FaultInjector}). Any -Dname=value argument is passed on to every
+ * JVM, e.g. -Dprotocol.binary=true. When the run is over the logger
+ * server's log is put through {@link LogAnalyzer} for per-round latencies.
+ *
+ * With -inProcess the Coordinator and every Participant run as threads of
+ * this JVM instead, connected through a {@link MemoryTransport} that takes
+ * its latency and loss from the -Dtransport.* arguments; only the logger
+ * server keeps a JVM of its own. Their local log files are then written to
+ * the current directory, and -crash closes the connections of the
+ * crashing participants instead of halting the JVM they share. Add
+ * -Dthreads.virtual=true to run them on virtual threads (see {@link Threads}).
+ *
+ * A ballot whose participants have not all exited by the -deadline is
+ * reported as timed out and left out of the ballot latencies.
+ *
+ * Usage: <code>java LoadHarness [-participants N] [-ballots B] [-concurrent C]
+ * [-timeout MS] [-crash R:K] [-delay MS] [-jitter MS] [-options "A B C"]
+ * [-basePort P] [-jvm "JVM OPTIONS"] [-dir DIR] [-deadline S] [-report]
+ * [-inProcess] [-Dname=value...]</code>
+ */
+public class LoadHarness {
+
+    private int participants = 10;
+    private int ballots = 1;
+    private int concurrent = 1;
+    private int timeout = 1000;
+    private int crashRound;
+    private int crashCount;
+    private long delay;
+    private long jitter;
+    private String options = "A B C";
+    private int basePort = 20000;
+    private List<String> jvmOptions = Arrays.asList("-XX:TieredStopAtLevel=1", "-XX:+UseSerialGC", "-Xss256k", "-Xmx64m");
+    private final List<String> properties = new ArrayList<>();
+    private Path dir = Paths.get("harness_" + System.currentTimeMillis());
+    private long deadlineSeconds = 300;
+    private boolean fullReport;
+    private boolean inProcess;
+    private Transport transport;
+
+    /** the highest CPU time and resident set seen per process, sampled while it runs */
+    private final Map<Long, Long> cpuNanos = new ConcurrentHashMap<>();
+    private final Map<Long, Long> peakRssKb = new ConcurrentHashMap<>();
+    private final List<Process> running = new ArrayList<>();
+    private final List<ProcessHandle> sampled = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        LoadHarness harness = new LoadHarness();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-participants": harness.participants = Integer.parseInt(args[++i]); break;
+                case "-ballots": harness.ballots = Integer.parseInt(args[++i]); break;
+                case "-concurrent": harness.concurrent = Integer.parseInt(args[++i]); break;
+                case "-timeout": harness.timeout = Integer.parseInt(args[++i]); break;
+                case "-crash": {
+                    String[] crash = args[++i].split(":");
+                    harness.crashRound = Integer.parseInt(crash[0]);
+                    harness.crashCount = crash.length > 1 ? Integer.parseInt(crash[1]) : 1;
+                    break;
+                }
+                case "-delay": harness.delay = Long.parseLong(args[++i]); break;
+                case "-jitter": harness.jitter = Long.parseLong(args[++i]); break;
+                case "-options": harness.options = args[++i]; break;
+                case "-basePort": harness.basePort = Integer.parseInt(args[++i]); break;
+                case "-jvm": harness.jvmOptions = Arrays.asList(args[++i].trim().split("\\s+")); break;
+                case "-dir": harness.dir = Paths.get(args[++i]); break;
+                case "-deadline": harness.deadlineSeconds = Long.parseLong(args[++i]); break;
+                case "-report": harness.fullReport = true; break;
+                case "-inProcess": harness.inProcess = true; break;
+                default:
+                    if (!args[i].startsWith("-D"))
+                        throw new IllegalArgumentException("Unknown argument " + args[i]);
+                    harness.properties.add(args[i]);
+            }
+        }
+        harness.run();
+        if (harness.inProcess)
+            // Participants still running past the deadline are threads of this JVM, which this stops.
+            System.exit(0);
+    }
+
+    public void run() throws Exception {
+        int lastPort = participantPort(ballots - 1, participants - 1);
+        if (lastPort > 65535)
+            throw new IllegalArgumentException("Ports would run up to " + lastPort + "; lower -basePort, -ballots or -participants");
+        Files.createDirectories(dir);
+        int loggerPort = basePort;
+        int coordinatorPort = basePort + 1;
+
+        Thread sampler = new Thread(this::sample, "harness-sampler");
+        sampler.setDaemon(true);
+        sampler.start();
+
+        Process loggerServer = start("logger_server", Collections.emptyList(), "UDPLoggerServer", loggerPort);
+        Thread.sleep(300);
+        if (!loggerServer.isAlive())
+            throw new IllegalStateException("The logger server exited; see " + dir.resolve("logger_server.out"));
+        Process coordinator = null;
+        long coordinatorPid;
+        if (inProcess) {
+            startInProcess(coordinatorPort, loggerPort);
+            coordinatorPid = ProcessHandle.current().pid();
+        } else {
+            StringBuilder sessions = new StringBuilder();
+            for (int b = 0; b < ballots; b++)
+                sessions.append(b + 1).append('=').append(participants).append(':').append(options).append(';');
+            List<String> coordinatorArgs = new ArrayList<>(Arrays.asList(Integer.toString(coordinatorPort),
+                    Integer.toString(loggerPort), Integer.toString(participants), Integer.toString(timeout)));
+            coordinatorArgs.addAll(Arrays.asList(options.trim().split("\\s+")));
+            coordinator = start("coordinator", Arrays.asList("-Dcoordinator.sessions=true",
+                    "-Dcoordinator.ballots=" + sessions), "Coordinator", coordinatorArgs.toArray());
+            Thread.sleep(300);
+            if (!coordinator.isAlive()) {
+                loggerServer.destroy();
+                throw new IllegalStateException("The Coordinator exited; see " + dir.resolve("coordinator.out"));
+            }
+            coordinatorPid = coordinator.pid();
+        }
+
+        long[] launchedAt = new long[ballots];
+        long[] finishedAt = new long[ballots];
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(deadlineSeconds);
+        long runStart = System.nanoTime();
+        boolean timedOut = false;
+        for (int first = 0; first < ballots && !timedOut; first += concurrent) {
+            List<List<CompletableFuture<?>>> batch = new ArrayList<>();
+            for (int b = first; b < Math.min(ballots, first + concurrent); b++) {
+                launchedAt[b] = System.nanoTime();
+                batch.add(launchBallot(b, coordinatorPort, loggerPort));
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                int b = first + i;
+                boolean finished = true;
+                for (CompletableFuture<?> participant: batch.get(i)) {
+                    try {
+                        participant.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    } catch (TimeoutException e) {
+                        timedOut = true;
+                        finished = false;
+                        break;
+                    }
+                }
+                if (finished)
+                    finishedAt[b] = System.nanoTime();
+            }
+        }
+        long runNanos = System.nanoTime() - runStart;
+        if (timedOut)
+            System.err.println("Deadline of " + deadlineSeconds + " s passed; stopping the remaining processes");
+
+        // Let the last outcome lines reach the logger server, then stop it and the Coordinator cleanly.
+        Thread.sleep(500);
+        if (coordinator != null) {
+            coordinator.destroy();
+            coordinator.waitFor(10, TimeUnit.SECONDS);
+        }
+        loggerServer.destroy();
+        loggerServer.waitFor(10, TimeUnit.SECONDS);
+        synchronized (running) {
+            for (Process process: running)
+                process.destroyForcibly();
+        }
+
+        report(launchedAt, finishedAt, runNanos, coordinatorPid);
+    }
+
+    /**
+     * Sets this JVM up for -inProcess and starts the Coordinator on a thread of its own.
+     */
+    private void startInProcess(int coordinatorPort, int loggerPort) throws Exception {
+        for (String property: properties) {
+            String[] nameAndValue = property.substring(2).split("=", 2);
+            System.setProperty(nameAndValue[0], nameAndValue.length > 1 ? nameAndValue[1] : "");
+        }
+        if (delay > 0)
+            System.setProperty("fault.delayMillis", Long.toString(delay));
+        if (jitter > 0)
+            System.setProperty("fault.jitterMillis", Long.toString(jitter));
+        if (crashRound > 0) {
+            StringBuilder crashPorts = new StringBuilder();
+            for (int b = 0; b < ballots; b++)
+                for (int i = 0; i < Math.min(crashCount, participants); i++)
+                    crashPorts.append(participantPort(b, i)).append(',');
+            System.setProperty("fault.crashAtRound", Integer.toString(crashRound));
+            System.setProperty("fault.crashPorts", crashPorts.toString());
+        }
+        transport = MemoryTransport.shared();
+        synchronized (running) {
+            sampled.add(ProcessHandle.current());
+        }
+        Coordinator coordinator = new Coordinator(coordinatorPort, loggerPort, participants, timeout, options, transport);
+        coordinator.enableSessions();
+        for (int b = 0; b < ballots; b++)
+            coordinator.openSession(b + 1, participants, options);
+        Threads.start("coordinator", () -> {
+            try {
+                coordinator.startListening();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, true);
+    }
+
+    /**
+     * @return completes as each participant of {@code ballot} exits
+     */
+    private List<CompletableFuture<?>> launchBallot(int ballot, int coordinatorPort, int loggerPort) throws IOException {
+        List<CompletableFuture<?>> processes = new ArrayList<>();
+        for (int i = 0; i < participants; i++) {
+            if (inProcess) {
+                processes.add(takePartInProcess(ballot, participantPort(ballot, i), coordinatorPort, loggerPort));
+                continue;
+            }
+            List<String> faults = new ArrayList<>();
+            if (crashRound > 0 && i < crashCount)
+                faults.add("-Dfault.crashAtRound=" + crashRound);
+            if (delay > 0)
+                faults.add("-Dfault.delayMillis=" + delay);
+            if (jitter > 0)
+                faults.add("-Dfault.jitterMillis=" + jitter);
+            processes.add(start("participant_" + participantPort(ballot, i), faults, "Participant",
+                    coordinatorPort, loggerPort, participantPort(ballot, i), timeout, ballot + 1).onExit());
+        }
+        return processes;
+    }
+
+    private CompletableFuture<?> takePartInProcess(int ballot, int port, int coordinatorPort, int loggerPort) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        Threads.start("participant-" + port, () -> {
+            try {
+                new Participant(coordinatorPort, loggerPort, port, timeout, ballot + 1, transport).takePart();
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                done.complete(null);
+            }
+        }, true);
+        return done;
+    }
+
+    private int participantPort(int ballot, int index) {
+        return basePort + 10 + ballot * participants + index;
+    }
+
+    private Process start(String name, List<String> extraProperties, String mainClass, Object... args) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmOptions);
+        command.addAll(properties);
+        command.addAll(extraProperties);
+        command.add("-cp");
+        command.add(classPath());
+        command.add(mainClass);
+        for (Object arg: args)
+            command.add(arg.toString());
+        Process process = new ProcessBuilder(command)
+                .directory(dir.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(dir.resolve(name + ".out").toFile())
+                .start();
+        synchronized (running) {
+            running.add(process);
+            sampled.add(process.toHandle());
+        }
+        return process;
+    }
+
+    /**
+     * @return this JVM's class path with every entry made absolute, as children run in {@link #dir}
+     */
+    private static String classPath() {
+        return Arrays.stream(System.getProperty("java.class.path").split(File.pathSeparator))
+                .map(entry -> Paths.get(entry).toAbsolutePath().toString())
+                .collect(Collectors.joining(File.pathSeparator));
+    }
+
+    /**
+     * The logger server writes {@code logger_server_<start>.log}, then
+     * {@code .1.log}, {@code .2.log} and so on as it rotates. The analyzer
+     * replays events in file order, so segments are sorted by start time
+     * and then by number, the first counting as 0; sorted by name,
+     * {@code .1.log} would come before the first and {@code .10.log} before
+     * {@code .2.log}.
+     *
+     * @return the start time in a segment's name
+     */
+    private static long segmentStart(Path segment) {
+        return Long.parseLong(segmentFields(segment)[0]);
+    }
+
+    private static int segmentNumber(Path segment) {
+        String[] fields = segmentFields(segment);
+        return fields.length > 1 ? Integer.parseInt(fields[1]) : 0;
+    }
+
+    private static String[] segmentFields(Path segment) {
+        String name = segment.getFileName().toString();
+        return name.substring("logger_server_".length(), name.length() - ".log".length()).split("\\.");
+    }
+
+    /**
+     * Records the CPU time and peak resident set of every live child, and
+     * of this JVM with -inProcess, until the JVM exits.
+     */
+    private void sample() {
+        while (true) {
+            List<ProcessHandle> processes;
+            synchronized (running) {
+                processes = new ArrayList<>(sampled);
+            }
+            for (ProcessHandle process: processes) {
+                if (!process.isAlive())
+                    continue;
+                long pid = process.pid();
+                process.info().totalCpuDuration().ifPresent(cpu -> cpuNanos.merge(pid, cpu.toNanos(), Math::max));
+                long rss = peakRssKb(pid);
+                if (rss > 0)
+                    peakRssKb.merge(pid, rss, Math::max);
+            }
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the peak resident set of {@code pid} in kB as Linux reports it, 0 elsewhere
+     */
+    private static long peakRssKb(long pid) {
+        try (Stream<String> lines = Files.lines(Paths.get("/proc", Long.toString(pid), "status"))) {
+            return lines.filter(line -> line.startsWith("VmHWM:"))
+                    .mapToLong(line -> Long.parseLong(line.replaceAll("[^0-9]", "")))
+                    .findFirst().orElse(0);
+        } catch (IOException | RuntimeException e) {
+            return 0;
+        }
+    }
+
+    private void report(long[] launchedAt, long[] finishedAt, long runNanos, long coordinatorPid) throws Exception {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%d ballots of %d participants, %d at a time, timeout %d ms", ballots, participants, concurrent, timeout));
+        if (crashRound > 0)
+            out.append(String.format(", %d crashing at round %d", crashCount, crashRound));
+        if (delay > 0 || jitter > 0)
+            out.append(String.format(", delay %d+%d ms", delay, jitter));
+        out.append(System.lineSeparator());
+        out.append(String.format("wall time %.2f s, %.3f ballots/s%n", runNanos / 1e9, ballots / (runNanos / 1e9)));
+
+        long[] ballotMillis = new long[ballots];
+        int done = 0;
+        int timedOut = 0;
+        for (int b = 0; b < ballots; b++) {
+            if (finishedAt[b] != 0)
+                ballotMillis[done++] = (finishedAt[b] - launchedAt[b]) / 1_000_000;
+            else if (launchedAt[b] != 0)
+                timedOut++;
+        }
+        Arrays.sort(ballotMillis, 0, done);
+        out.append("launch to last participant exit, ms: ").append(summary(ballotMillis, done)).append(System.lineSeparator());
+        if (done < ballots)
+            out.append(String.format("%d ballots timed out, %d not launched before the deadline%n", timedOut, ballots - done - timedOut));
+
+        List<Path> serverLogs;
+        try (Stream<Path> files = Files.list(dir)) {
+            serverLogs = files.filter(file -> file.getFileName().toString().startsWith("logger_server_")
+                    && file.getFileName().toString().endsWith(".log"))
+                    .sorted(Comparator.comparingLong(LoadHarness::segmentStart).thenComparingInt(LoadHarness::segmentNumber))
+                    .collect(Collectors.toList());
+        }
+        LogAnalyzer analyzer = new LogAnalyzer(Runtime.getRuntime().availableProcessors(), 3);
+        Map<Integer, LogAnalyzer.BallotTimeline> timelines = analyzer.rebuild(analyzer.parse(serverLogs));
+
+        long[] toOutcome = new long[timelines.size()];
+        int outcomes = 0;
+        List<long[]> rounds = new ArrayList<>();
+        int[] roundSizes = new int[0];
+        for (LogAnalyzer.BallotTimeline ballot: timelines.values()) {
+            long origin = Long.MAX_VALUE;
+            for (LogAnalyzer.ParticipantTimeline participant: ballot.participants) {
+                for (int r = 1; r <= participant.rounds; r++) {
+                    if (participant.begin[r] == LogAnalyzer.NO_TIME)
+                        continue;
+                    origin = Math.min(origin, participant.begin[r]);
+                    if (participant.end[r] == LogAnalyzer.NO_TIME)
+                        continue;
+                    while (rounds.size() < r) {
+                        rounds.add(new long[16]);
+                        roundSizes = Arrays.copyOf(roundSizes, rounds.size());
+                    }
+                    long[] durations = rounds.get(r - 1);
+                    if (roundSizes[r - 1] == durations.length)
+                        rounds.set(r - 1, durations = Arrays.copyOf(durations, durations.length * 2));
+                    durations[roundSizes[r - 1]++] = participant.end[r] - participant.begin[r];
+                }
+            }
+            if (origin != Long.MAX_VALUE && ballot.lastOutcomeAt != Long.MIN_VALUE)
+                toOutcome[outcomes++] = ballot.lastOutcomeAt - origin;
+        }
+        Arrays.sort(toOutcome, 0, outcomes);
+        out.append("round 1 to last OUTCOME, ms: ").append(summary(toOutcome, outcomes)).append(System.lineSeparator());
+        for (int r = 0; r < rounds.size(); r++) {
+            Arrays.sort(rounds.get(r), 0, roundSizes[r]);
+            out.append(String.format("round %d latency, ms: %s%n", r + 1, summary(rounds.get(r), roundSizes[r])));
+        }
+
+        long totalCpu = 0;
+        for (long cpu: cpuNanos.values())
+            totalCpu += cpu;
+        long[] rss = new long[peakRssKb.size()];
+        int measured = 0;
+        for (Map.Entry<Long, Long> process: peakRssKb.entrySet())
+            if (process.getKey() != coordinatorPid)
+                rss[measured++] = process.getValue() / 1024;
+        Arrays.sort(rss, 0, measured);
+        String coordinator = inProcess ? "in-process ballots" : "coordinator";
+        out.append(String.format("CPU %.2f s across %d processes, %s %.2f s%n", totalCpu / 1e9, cpuNanos.size(),
+                coordinator, cpuNanos.getOrDefault(coordinatorPid, 0L) / 1e9));
+        out.append("peak RSS per process, MB: ").append(summary(rss, measured));
+        if (peakRssKb.containsKey(coordinatorPid))
+            out.append(", ").append(coordinator).append(' ').append(peakRssKb.get(coordinatorPid) / 1024);
+        out.append(System.lineSeparator());
+        if (fullReport)
+            for (LogAnalyzer.BallotTimeline ballot: timelines.values())
+                analyzer.report(ballot, out);
+        out.append("logs in ").append(dir.toAbsolutePath()).append(File.separator).append(System.lineSeparator());
+        System.out.print(out);
+    }
+
+    /**
+     * @return p50/p90/p99/max of the first {@code size} values of {@code sorted}
+     */
+    private static String summary(long[] sorted, int size) {
+        if (size == 0)
+            return "-";
+        return String.format("p50 %d p90 %d p99 %d max %d (n=%d)", percentile(sorted, size, 50),
+                percentile(sorted, size, 90), percentile(sorted, size, 99), sorted[size - 1], size);
+    }
+
+    private static long percentile(long[] sorted, int size, double percent) {
+        int rank = (int) Math.ceil(size * percent / 100);
+        return sorted[Math.max(0, Math.min(size, rank) - 1)];
+    }
+}
@@ -0,0 +1,620 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Offline analysis of the logs a run leaves behind: the logger server's
+ * <code>logger_server_*.log</code> segments, whose lines carry the time
+ * they were received, or the processes' own <code>coordinator_*.log</code>
+ * and <code>participant_*.log</code> files, which carry no time. Pass one
+ * kind or the other, not both, or every event is counted twice.
+ *
+ * Files are memory-mapped and cut into chunks at line boundaries; the
+ * chunks are parsed in parallel into compact event arrays, straight from
+ * the mapped bytes, and only the lines in the {@link CoordinatorLogger} and
+ * {@link ParticipantLogger} formats that make up a timeline are kept. The
+ * events are then replayed in file order to rebuild, per ballot, when each
+ * round began and ended, how many votes were sent and received, who was
+ * seen to crash and what outcomes were reported, and to report the
+ * distribution of round latencies and the participants that lagged.
+ *
+ * Usage: <code>java LogAnalyzer [-threads N] [-stragglers FACTOR] file...</code>;
+ * a participant is a straggler in a round it took more than FACTOR (3 by
+ * default) times the median to finish.
+ */
+public class LogAnalyzer {
+
+    static final int BEGIN_ROUND = 1;
+    static final int END_ROUND = 2;
+    static final int VOTES_SENT = 3;
+    static final int VOTES_RECEIVED = 4;
+    static final int CRASHED = 5;
+    static final int OUTCOME_DECIDED = 6;
+    static final int OUTCOME_SENT = 7;
+    static final int OUTCOME_RECEIVED = 8;
+    static final int OUTCOME_DECLARED = 9;
+    static final int SESSION = 10;
+
+    /** the process of events logged by the Coordinator */
+    static final int COORDINATOR = -1;
+    static final long NO_TIME = -1;
+
+    private static final long CHUNK_BYTES = 64L << 20;
+    /** how far past its end a chunk is mapped to finish its last line */
+    private static final int MAX_LINE_BYTES = 1 << 20;
+
+    private static final byte[] BEGIN_ROUND_TEXT = ascii("begin round ");
+    private static final byte[] END_ROUND_TEXT = ascii("end round ");
+    private static final byte[] VOTES_SENT_TEXT = ascii("votes sent to ");
+    private static final byte[] VOTES_RECEIVED_TEXT = ascii("votes received from ");
+    private static final byte[] CRASHED_TEXT = ascii("participant crashed: ");
+    private static final byte[] DECIDED_TEXT = ascii("outcome vote decided: ");
+    private static final byte[] OUTCOME_SENT_TEXT = ascii("outcome vote sent to Coordinator: ");
+    private static final byte[] OUTCOME_TEXT = ascii("outcome ");
+    private static final byte[] RECEIVED_FROM_TEXT = ascii(" received from ");
+    private static final byte[] DECLARED_TEXT = ascii(" declared by ");
+    private static final byte[] IN_SESSION_TEXT = ascii(" in session ");
+    private static final byte[] JOIN_SENT_TEXT = ascii("JOIN sent to Coordinator");
+
+    /** outcome names by id, shared by every parser */
+    private final Map<String, Integer> outcomeIds = new ConcurrentHashMap<>();
+    private final List<String> outcomeNames = new ArrayList<>();
+    private final AtomicInteger nextOutcomeId = new AtomicInteger();
+
+    private final int threads;
+    private final double stragglerFactor;
+
+    public LogAnalyzer(int threads, double stragglerFactor) {
+        this.threads = threads;
+        this.stragglerFactor = stragglerFactor;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = Runtime.getRuntime().availableProcessors();
+        double stragglerFactor = 3;
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-threads"))
+                threads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-stragglers"))
+                stragglerFactor = Double.parseDouble(args[++i]);
+            else
+                files.add(Paths.get(args[i]));
+        }
+        if (files.isEmpty()) {
+            System.err.println("Usage: java LogAnalyzer [-threads N] [-stragglers FACTOR] file...");
+            System.exit(1);
+        }
+        LogAnalyzer analyzer = new LogAnalyzer(threads, stragglerFactor);
+        long start = System.nanoTime();
+        Events events = analyzer.parse(files);
+        Map<Integer, BallotTimeline> ballots = analyzer.rebuild(events);
+        StringBuilder report = new StringBuilder();
+        for (BallotTimeline ballot: ballots.values())
+            analyzer.report(ballot, report);
+        report.append(String.format("%d events from %d files in %.1f ms%n",
+                events.size, files.size(), (System.nanoTime() - start) / 1e6));
+        System.out.print(report);
+    }
+
+    /**
+     * Parses {@code files} in parallel chunks.
+     *
+     * @return the timeline events of every file, in file order
+     */
+    public Events parse(List<Path> files) throws IOException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Events>> chunks = new ArrayList<>();
+        List<FileChannel> channels = new ArrayList<>();
+        try {
+            for (Path file: files) {
+                FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+                channels.add(channel);
+                long size = channel.size();
+                for (long start = 0; start < size; start += CHUNK_BYTES) {
+                    long chunkStart = start;
+                    chunks.add(pool.submit(() -> parseChunk(channel, chunkStart, Math.min(size, chunkStart + CHUNK_BYTES))));
+                }
+            }
+            Events all = new Events();
+            for (Future<Events> chunk: chunks)
+                all.addAll(chunk.get());
+            return all;
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdown();
+            for (FileChannel channel: channels)
+                channel.close();
+        }
+    }
+
+    /**
+     * Parses the lines that start in {@code [start, end)}: a line cut by
+     * {@code start} belongs to the previous chunk, and one cut by {@code end}
+     * is read to its end.
+     */
+    private Events parseChunk(FileChannel channel, long start, long end) throws IOException {
+        long mapStart = Math.max(0, start - 1);
+        long mapEnd = Math.min(channel.size(), end + MAX_LINE_BYTES);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+        int limit = buffer.limit();
+        int ownedEnd = (int) (end - mapStart);
+        int position = 0;
+        if (start > 0) {
+            // Skip to the first line that starts inside the chunk.
+            while (position < limit && buffer.get(position) != '\n')
+                position++;
+            position++;
+        }
+        Events events = new Events();
+        while (position < ownedEnd && position < limit) {
+            int lineEnd = position;
+            while (lineEnd < limit && buffer.get(lineEnd) != '\n')
+                lineEnd++;
+            parseLine(buffer, position, lineEnd, events);
+            position = lineEnd + 1;
+        }
+        return events;
+    }
+
+    private void parseLine(MappedByteBuffer line, int position, int end, Events events) {
+        long time = NO_TIME;
+        if (position < end && isDigit(line.get(position))) {
+            time = 0;
+            while (position < end && isDigit(line.get(position)))
+                time = time * 10 + line.get(position++) - '0';
+            position++;
+        }
+        if (position + 3 >= end || line.get(position) != '[')
+            return;
+        int process;
+        if (line.get(position + 1) == 'C') {
+            process = COORDINATOR;
+            position += 4;
+        } else if (line.get(position + 1) == 'P') {
+            process = 0;
+            position += 2;
+            while (position < end && isDigit(line.get(position)))
+                process = process * 10 + line.get(position++) - '0';
+            position += 2;
+        } else {
+            return;
+        }
+        if (position >= end)
+            return;
+
+        if (process == COORDINATOR) {
+            if (startsWith(line, position, end, OUTCOME_TEXT)) {
+                int nameStart = position + OUTCOME_TEXT.length;
+                int nameEnd = indexOf(line, nameStart, end, (byte) ' ');
+                if (nameEnd < 0)
+                    return;
+                if (startsWith(line, nameEnd, end, RECEIVED_FROM_TEXT))
+                    events.add(time, process, OUTCOME_RECEIVED,
+                            parseInt(line, nameEnd + RECEIVED_FROM_TEXT.length, end), outcomeId(line, nameStart, nameEnd));
+                else if (startsWith(line, nameEnd, end, DECLARED_TEXT)) {
+                    // Older logs do not say which ballot was declared; those lines are dropped.
+                    int session = sessionSuffix(line, nameEnd, end);
+                    if (session >= 0)
+                        events.add(time, process, OUTCOME_DECLARED, session, outcomeId(line, nameStart, nameEnd));
+                }
+            } else if (startsWith(line, position, end, CRASHED_TEXT)) {
+                events.add(time, process, CRASHED, parseInt(line, position + CRASHED_TEXT.length, end), 0);
+            }
+            return;
+        }
+
+        switch (line.get(position)) {
+        case 'b':
+            if (startsWith(line, position, end, BEGIN_ROUND_TEXT))
+                events.add(time, process, BEGIN_ROUND, parseInt(line, position + BEGIN_ROUND_TEXT.length, end), 0);
+            break;
+        case 'e':
+            if (startsWith(line, position, end, END_ROUND_TEXT))
+                events.add(time, process, END_ROUND, parseInt(line, position + END_ROUND_TEXT.length, end), 0);
+            break;
+        case 'v':
+            if (startsWith(line, position, end, VOTES_SENT_TEXT))
+                events.add(time, process, VOTES_SENT, parseInt(line, position + VOTES_SENT_TEXT.length, end),
+                        count(line, position, end, (byte) '<'));
+            else if (startsWith(line, position, end, VOTES_RECEIVED_TEXT))
+                events.add(time, process, VOTES_RECEIVED, parseInt(line, position + VOTES_RECEIVED_TEXT.length, end),
+                        count(line, position, end, (byte) '<'));
+            break;
+        case 'p':
+            if (startsWith(line, position, end, CRASHED_TEXT))
+                events.add(time, process, CRASHED, parseInt(line, position + CRASHED_TEXT.length, end), 0);
+            break;
+        case 'o':
+            if (startsWith(line, position, end, DECIDED_TEXT)) {
+                int nameStart = position + DECIDED_TEXT.length;
+                events.add(time, process, OUTCOME_DECIDED, 0,
+                        outcomeId(line, nameStart, indexOf(line, nameStart, end, (byte) '(')));
+            } else if (startsWith(line, position, end, OUTCOME_SENT_TEXT)) {
+                int nameStart = position + OUTCOME_SENT_TEXT.length;
+                events.add(time, process, OUTCOME_SENT, 0,
+                        outcomeId(line, nameStart, indexOf(line, nameStart, end, (byte) '(')));
+            }
+            break;
+        case 'J':
+            // The JOIN names the session the participant belongs to, unless it is the default ballot.
+            if (startsWith(line, position, end, JOIN_SENT_TEXT)) {
+                int session = sessionSuffix(line, position, end);
+                if (session > 0)
+                    events.add(time, process, SESSION, session, 0);
+            }
+            break;
+        default:
+        }
+    }
+
+    private int outcomeId(MappedByteBuffer line, int start, int end) {
+        if (end < 0)
+            return -1;
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = line.get(start + i);
+        String name = new String(bytes, StandardCharsets.UTF_8);
+        Integer id = outcomeIds.get(name);
+        if (id != null)
+            return id;
+        synchronized (outcomeNames) {
+            return outcomeIds.computeIfAbsent(name, n -> {
+                outcomeNames.add(n);
+                return nextOutcomeId.getAndIncrement();
+            });
+        }
+    }
+
+    String outcomeName(int id) {
+        synchronized (outcomeNames) {
+            return id < 0 ? "?" : outcomeNames.get(id);
+        }
+    }
+
+    /**
+     * Replays {@code events} per process and groups the participants into ballots by session.
+     */
+    public Map<Integer, BallotTimeline> rebuild(Events events) {
+        Map<Integer, ParticipantTimeline> participants = new TreeMap<>();
+        List<long[]> coordinatorEvents = new ArrayList<>();
+        for (int i = 0; i < events.size; i++) {
+            long time = events.time(i);
+            int process = events.process(i);
+            int type = events.type(i);
+            int a = events.a(i);
+            int b = events.b(i);
+            if (process == COORDINATOR) {
+                coordinatorEvents.add(new long[] { time, type, a, b });
+                continue;
+            }
+            ParticipantTimeline participant = participants.computeIfAbsent(process, ParticipantTimeline::new);
+            participant.apply(time, type, a, b);
+        }
+
+        Map<Integer, BallotTimeline> ballots = new TreeMap<>();
+        for (ParticipantTimeline participant: participants.values())
+            ballots.computeIfAbsent(participant.session, BallotTimeline::new).participants.add(participant);
+        for (long[] event: coordinatorEvents) {
+            int type = (int) event[1];
+            int participant = (int) event[2];
+            BallotTimeline ballot;
+            if (type == OUTCOME_DECLARED) {
+                // No participant declares the outcome; the line names the session instead.
+                ballot = ballots.computeIfAbsent(participant, BallotTimeline::new);
+            } else {
+                ParticipantTimeline timeline = participants.get(participant);
+                ballot = ballots.computeIfAbsent(timeline == null ? 0 : timeline.session, BallotTimeline::new);
+            }
+            if (type == OUTCOME_RECEIVED)
+                ballot.outcomesReceived.merge((int) event[3], 1, Integer::sum);
+            else if (type == OUTCOME_DECLARED)
+                ballot.declared = (int) event[3];
+            else if (type == CRASHED)
+                ballot.coordinatorSawCrash.add(participant);
+            if (event[0] != NO_TIME)
+                ballot.lastOutcomeAt = Math.max(ballot.lastOutcomeAt, event[0]);
+        }
+        return ballots;
+    }
+
+    public void report(BallotTimeline ballot, StringBuilder out) {
+        long origin = Long.MAX_VALUE;
+        int rounds = 0;
+        for (ParticipantTimeline participant: ballot.participants) {
+            rounds = Math.max(rounds, participant.rounds);
+            for (int r = 1; r <= participant.rounds; r++)
+                if (participant.begin[r] != NO_TIME)
+                    origin = Math.min(origin, participant.begin[r]);
+        }
+        out.append(String.format("Ballot %d: %d participants, %d rounds%n",
+                ballot.session, ballot.participants.size(), rounds));
+        out.append(String.format("  %5s %6s %9s %9s %8s %8s %8s %8s %7s %7s  %s%n", "round", "seen", "start ms",
+                "end ms", "p50 ms", "p90 ms", "p99 ms", "max ms", "sent", "recv", "crashed"));
+        List<String> stragglers = new ArrayList<>();
+        for (int r = 1; r <= rounds; r++) {
+            long first = Long.MAX_VALUE;
+            long last = Long.MIN_VALUE;
+            long sent = 0;
+            long received = 0;
+            int seen = 0;
+            long[] durations = new long[ballot.participants.size()];
+            int timed = 0;
+            List<Integer> crashed = new ArrayList<>();
+            for (ParticipantTimeline participant: ballot.participants) {
+                if (r > participant.rounds)
+                    continue;
+                seen++;
+                sent += participant.votesSent[r];
+                received += participant.votesReceived[r];
+                for (Integer port: participant.crashes.get(r))
+                    if (!crashed.contains(port))
+                        crashed.add(port);
+                if (participant.begin[r] != NO_TIME) {
+                    first = Math.min(first, participant.begin[r]);
+                    if (participant.end[r] != NO_TIME) {
+                        last = Math.max(last, participant.end[r]);
+                        durations[timed++] = participant.end[r] - participant.begin[r];
+                    }
+                }
+            }
+            Arrays.sort(durations, 0, timed);
+            long median = percentile(durations, timed, 50);
+            out.append(String.format("  %5d %6d %9s %9s %8s %8s %8s %8s %7d %7d  %s%n", r, seen,
+                    first == Long.MAX_VALUE ? "-" : Long.toString(first - origin),
+                    last == Long.MIN_VALUE ? "-" : Long.toString(last - origin),
+                    timed == 0 ? "-" : Long.toString(median),
+                    timed == 0 ? "-" : Long.toString(percentile(durations, timed, 90)),
+                    timed == 0 ? "-" : Long.toString(percentile(durations, timed, 99)),
+                    timed == 0 ? "-" : Long.toString(durations[timed - 1]),
+                    sent, received, crashed.isEmpty() ? "-" : crashed.toString()));
+            for (ParticipantTimeline participant: ballot.participants) {
+                if (r > participant.rounds || participant.begin[r] == NO_TIME || participant.end[r] == NO_TIME)
+                    continue;
+                long duration = participant.end[r] - participant.begin[r];
+                if (timed > 1 && duration > Math.max(1, median) * stragglerFactor)
+                    stragglers.add(String.format("round %d P%d %d ms (median %d ms)", r, participant.port, duration, median));
+            }
+        }
+        if (!stragglers.isEmpty())
+            out.append("  stragglers: ").append(String.join("; ", stragglers)).append(System.lineSeparator());
+
+        Map<String, Integer> decided = new TreeMap<>();
+        for (ParticipantTimeline participant: ballot.participants)
+            if (participant.decided >= 0)
+                decided.merge(outcomeName(participant.decided), 1, Integer::sum);
+        Map<String, Integer> received = new TreeMap<>();
+        for (Map.Entry<Integer, Integer> outcome: ballot.outcomesReceived.entrySet())
+            received.put(outcomeName(outcome.getKey()), outcome.getValue());
+        out.append("  outcomes decided: ").append(decided)
+                .append(", received by the coordinator: ").append(received);
+        if (ballot.declared >= 0)
+            out.append(", declared: ").append(outcomeName(ballot.declared));
+        if (decided.size() > 1 || received.size() > 1)
+            out.append(" (DISAGREEMENT)");
+        out.append(System.lineSeparator());
+        if (!ballot.coordinatorSawCrash.isEmpty())
+            out.append("  crashes seen by the coordinator: ").append(ballot.coordinatorSawCrash).append(System.lineSeparator());
+        if (origin != Long.MAX_VALUE && ballot.lastOutcomeAt != Long.MIN_VALUE)
+            out.append("  round 1 to last outcome: ").append(ballot.lastOutcomeAt - origin).append(" ms")
+                    .append(System.lineSeparator());
+    }
+
+    private static long percentile(long[] sorted, int size, double percent) {
+        if (size == 0)
+            return 0;
+        int rank = (int) Math.ceil(size * percent / 100);
+        return sorted[Math.max(0, Math.min(size, rank) - 1)];
+    }
+
+    private static boolean startsWith(MappedByteBuffer line, int position, int end, byte[] text) {
+        if (position + text.length > end)
+            return false;
+        for (int i = 0; i < text.length; i++)
+            if (line.get(position + i) != text[i])
+                return false;
+        return true;
+    }
+
+    private static int indexOf(MappedByteBuffer line, int position, int end, byte b) {
+        for (int i = position; i < end; i++)
+            if (line.get(i) == b)
+                return i;
+        return -1;
+    }
+
+    /**
+     * @return the session a line ends with, as <code> in session &lt;id&gt;</code>, or -1 if it names none
+     */
+    private static int sessionSuffix(MappedByteBuffer line, int position, int end) {
+        if (end > position && line.get(end - 1) == '\r')
+            end--;
+        int digits = end;
+        while (digits > position && isDigit(line.get(digits - 1)))
+            digits--;
+        int suffix = digits - IN_SESSION_TEXT.length;
+        if (digits == end || suffix < position || !startsWith(line, suffix, digits, IN_SESSION_TEXT))
+            return -1;
+        return parseInt(line, digits, end);
+    }
+
+    private static int count(MappedByteBuffer line, int position, int end, byte b) {
+        int n = 0;
+        for (int i = position; i < end; i++)
+            if (line.get(i) == b)
+                n++;
+        return n;
+    }
+
+    private static int parseInt(MappedByteBuffer line, int position, int end) {
+        int value = 0;
+        while (position < end && isDigit(line.get(position)))
+            value = value * 10 + line.get(position++) - '0';
+        return value;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Timeline events packed three longs each: the time (or {@link #NO_TIME}),
+     * the process and type, and the two arguments.
+     */
+    public static final class Events {
+
+        private long[] data = new long[3 * 1024];
+        private int size;
+
+        void add(long time, int process, int type, int a, int b) {
+            if (data.length < (size + 1) * 3)
+                data = Arrays.copyOf(data, data.length * 2);
+            int i = size++ * 3;
+            data[i] = time;
+            data[i + 1] = ((long) process << 32) | (type & 0xFFFFFFFFL);
+            data[i + 2] = ((long) a << 32) | (b & 0xFFFFFFFFL);
+        }
+
+        void addAll(Events other) {
+            if (data.length < (size + other.size) * 3)
+                data = Arrays.copyOf(data, Math.max(data.length * 2, (size + other.size) * 3));
+            System.arraycopy(other.data, 0, data, size * 3, other.size * 3);
+            size += other.size;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        long time(int i) {
+            return data[i * 3];
+        }
+
+        int process(int i) {
+            return (int) (data[i * 3 + 1] >> 32);
+        }
+
+        int type(int i) {
+            return (int) data[i * 3 + 1];
+        }
+
+        int a(int i) {
+            return (int) (data[i * 3 + 2] >> 32);
+        }
+
+        int b(int i) {
+            return (int) data[i * 3 + 2];
+        }
+    }
+
+    /**
+     * What one participant logged, by round.
+     */
+    static final class ParticipantTimeline {
+
+        final int port;
+        int session;
+        int rounds;
+        int current;
+        long[] begin = new long[8];
+        long[] end = new long[8];
+        long[] votesSent = new long[8];
+        long[] votesReceived = new long[8];
+        final List<List<Integer>> crashes = new ArrayList<>();
+        int decided = -1;
+
+        ParticipantTimeline(int port) {
+            this.port = port;
+            Arrays.fill(begin, NO_TIME);
+            Arrays.fill(end, NO_TIME);
+            for (int r = 0; r < begin.length; r++)
+                crashes.add(new ArrayList<>());
+        }
+
+        void apply(long time, int type, int a, int b) {
+            switch (type) {
+            case BEGIN_ROUND:
+                current = a;
+                ensureRound(a);
+                begin[a] = time;
+                break;
+            case END_ROUND:
+                ensureRound(a);
+                end[a] = time;
+                break;
+            case VOTES_SENT:
+                ensureRound(current);
+                votesSent[current] += b;
+                break;
+            case VOTES_RECEIVED:
+                ensureRound(current);
+                votesReceived[current] += b;
+                break;
+            case CRASHED:
+                ensureRound(current);
+                crashes.get(current).add(a);
+                break;
+            case OUTCOME_DECIDED:
+                decided = b;
+                break;
+            case SESSION:
+                session = a;
+                break;
+            default:
+            }
+        }
+
+        private void ensureRound(int round) {
+            rounds = Math.max(rounds, round);
+            if (round < begin.length)
+                return;
+            int length = Math.max(round + 1, begin.length * 2);
+            int old = begin.length;
+            begin = Arrays.copyOf(begin, length);
+            end = Arrays.copyOf(end, length);
+            Arrays.fill(begin, old, length, NO_TIME);
+            Arrays.fill(end, old, length, NO_TIME);
+            votesSent = Arrays.copyOf(votesSent, length);
+            votesReceived = Arrays.copyOf(votesReceived, length);
+            for (int r = old; r < length; r++)
+                crashes.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * The participants of one session and what the Coordinator logged about it.
+     */
+    static final class BallotTimeline {
+
+        final int session;
+        final List<ParticipantTimeline> participants = new ArrayList<>();
+        final Map<Integer, Integer> outcomesReceived = new TreeMap<>();
+        final List<Integer> coordinatorSawCrash = new ArrayList<>();
+        int declared = -1;
+        long lastOutcomeAt = Long.MIN_VALUE;
+
+        BallotTimeline(int session) {
+            this.session = session;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Decides which events the {@link ParticipantLogger} and the
+ * {@link CoordinatorLogger} write. Each event belongs to a
+ * {@link Category}, and each category has a {@link Level}; an event is
+ * written if its category is at or above -Dlogger.level (trace by
+ * default, i.e. everything) and, when -Dlogger.categories lists
+ * categories, is one of them.
+ *
+ * The decision is taken once per category when a logger is created. An
+ * event that is off costs its logger one branch on a final field, before
+ * any of its arguments are formatted, so per-message tracing can stay in
+ * the code and be switched off for production ballots with
+ * -Dlogger.level=info.
+ */
+public final class LogFilter {
+
+	public enum Level {
+		TRACE, DEBUG, INFO, WARN
+	}
+
+	public enum Category {
+		/** every protocol message sent or received, as text */
+		MESSAGE(Level.TRACE),
+		/** the votes carried by each VOTE message */
+		VOTE(Level.TRACE),
+		/** connections listened for, set up and accepted */
+		CONNECTION(Level.DEBUG),
+		/** joining, details, vote options and the start and end of rounds */
+		PROTOCOL(Level.INFO),
+		/** outcomes decided, reported and declared */
+		OUTCOME(Level.INFO),
+		/** crashed participants and disagreeing outcomes */
+		FAULT(Level.WARN);
+
+		final Level level;
+
+		Category(Level level) {
+			this.level = level;
+		}
+	}
+
+	private final Set<Category> enabled;
+
+	public LogFilter(Level threshold, Set<Category> categories) {
+		enabled = EnumSet.noneOf(Category.class);
+		for (Category category: categories)
+			if (category.level.compareTo(threshold) >= 0)
+				enabled.add(category);
+	}
+
+	/**
+	 * @return the filter set by -Dlogger.level and -Dlogger.categories, a
+	 * comma-separated list of category names
+	 */
+	public static LogFilter fromSystemProperties() {
+		Level threshold = Level.valueOf(System.getProperty("logger.level", "trace").trim().toUpperCase());
+		String names = System.getProperty("logger.categories", "").trim();
+		Set<Category> categories = EnumSet.allOf(Category.class);
+		if (!names.isEmpty()) {
+			categories = EnumSet.noneOf(Category.class);
+			for (String name: names.split(","))
+				categories.add(Category.valueOf(name.trim().toUpperCase()));
+		}
+		return new LogFilter(threshold, categories);
+	}
+
+	public boolean isEnabled(Category category) {
+		return enabled.contains(category);
+	}
+}
@@ -0,0 +1,359 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.BindException;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link Transport} between endpoints in the same JVM, with no sockets
+ * and no ports taken from the system. Each direction of a connection is a
+ * queue of byte segments, one per flush of the sending stream.
+ *
+ * A segment is delivered latency plus up to jitter milliseconds after it
+ * is flushed, never before the segment flushed ahead of it. With
+ * probability lossRate it is lost and, as TCP would do, sent again
+ * retransmit milliseconds later, where it may be lost again. Loss thus
+ * delays a stream without corrupting it, and a peer whose votes are held
+ * up past a round's timeout is counted as crashed just as it would be on
+ * a lossy network.
+ *
+ * Set up with -Dtransport.latencyMillis, -Dtransport.jitterMillis,
+ * -Dtransport.lossRate and -Dtransport.retransmitMillis (200 by default)
+ * when chosen with -Dtransport=memory; all endpoints in a JVM then share
+ * {@link #shared()}.
+ */
+public class MemoryTransport implements Transport {
+
+    private static MemoryTransport shared;
+
+    /** connections accepted here see the dialling side on ports above the range of real ones */
+    private final AtomicInteger nextEphemeralPort = new AtomicInteger(65536);
+    private final Map<Integer, MemoryListener> listeners = new ConcurrentHashMap<>();
+    private final long latencyNanos;
+    private final long jitterNanos;
+    private final double lossRate;
+    private final long retransmitNanos;
+
+    public MemoryTransport(long latencyMillis, long jitterMillis, double lossRate, long retransmitMillis) {
+        if (lossRate < 0 || lossRate >= 1)
+            throw new IllegalArgumentException("Loss rate must be in [0, 1): " + lossRate);
+        this.latencyNanos = TimeUnit.MILLISECONDS.toNanos(latencyMillis);
+        this.jitterNanos = TimeUnit.MILLISECONDS.toNanos(jitterMillis);
+        this.lossRate = lossRate;
+        this.retransmitNanos = TimeUnit.MILLISECONDS.toNanos(retransmitMillis);
+    }
+
+    /**
+     * @return the transport every endpoint in this JVM uses with -Dtransport=memory
+     */
+    static synchronized MemoryTransport shared() {
+        if (shared == null)
+            shared = new MemoryTransport(Long.getLong("transport.latencyMillis", 0),
+                    Long.getLong("transport.jitterMillis", 0),
+                    Double.parseDouble(System.getProperty("transport.lossRate", "0")),
+                    Long.getLong("transport.retransmitMillis", 200));
+        return shared;
+    }
+
+    public Listener listen(int port) throws IOException {
+        MemoryListener listener = new MemoryListener(port);
+        if (listeners.putIfAbsent(port, listener) != null)
+            throw new BindException("Address already in use: " + port);
+        return listener;
+    }
+
+    public Connection connect(int port, int timeoutMillis) throws IOException {
+        MemoryListener listener = listeners.get(port);
+        if (listener == null)
+            throw new ConnectException("Connection refused: " + port);
+        Pipe toListener = new Pipe();
+        Pipe toDialler = new Pipe();
+        listener.offer(new MemoryConnection(nextEphemeralPort.getAndIncrement(), toListener, toDialler));
+        return new MemoryConnection(port, toDialler, toListener);
+    }
+
+    /**
+     * @return how long after now a segment flushed now is delivered, before ordering
+     */
+    private long delay() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long delay = latencyNanos + (jitterNanos > 0 ? random.nextLong(jitterNanos + 1) : 0);
+        while (lossRate > 0 && random.nextDouble() < lossRate)
+            delay += retransmitNanos;
+        return delay;
+    }
+
+    private class MemoryListener implements Listener {
+
+        private final int port;
+        private final BlockingQueue<MemoryConnection> backlog = new LinkedBlockingQueue<>();
+        private volatile boolean closed;
+
+        MemoryListener(int port) {
+            this.port = port;
+        }
+
+        void offer(MemoryConnection connection) throws IOException {
+            if (closed)
+                throw new ConnectException("Connection refused: " + port);
+            backlog.add(connection);
+        }
+
+        public Connection accept(int timeoutMillis) throws IOException {
+            MemoryConnection connection;
+            try {
+                connection = timeoutMillis == 0 ? backlog.take() : backlog.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SocketException("Accept interrupted");
+            }
+            if (connection == null)
+                throw new SocketTimeoutException("Accept timed out");
+            if (connection == MemoryConnection.CLOSED) {
+                backlog.add(connection);
+                throw new SocketException("Socket closed");
+            }
+            return connection;
+        }
+
+        public void close() {
+            if (closed)
+                return;
+            closed = true;
+            listeners.remove(port, this);
+            // Connections nobody will accept are reset, and whoever is blocked in accept is woken.
+            for (MemoryConnection pending; (pending = backlog.poll()) != null; )
+                pending.close();
+            backlog.add(MemoryConnection.CLOSED);
+        }
+    }
+
+    /**
+     * One direction of a connection. Readers wait on a Condition rather
+     * than a monitor, so that a virtual thread blocked in a read does not
+     * pin its carrier.
+     */
+    private class Pipe {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+        private final ArrayDeque<byte[]> segments = new ArrayDeque<>();
+        private final ArrayDeque<Long> deliverAt = new ArrayDeque<>();
+        private int headOffset;
+        private long lastDeliverAt = Long.MIN_VALUE;
+        private boolean writerClosed;
+        private boolean readerClosed;
+
+        void send(byte[] segment) throws IOException {
+            lock.lock();
+            try {
+                if (writerClosed)
+                    throw new SocketException("Socket closed");
+                if (readerClosed)
+                    throw new SocketException("Connection reset");
+                long at = System.nanoTime() + delay();
+                // A stream is delivered in order, so nothing overtakes the segment ahead of it.
+                if (lastDeliverAt != Long.MIN_VALUE && at - lastDeliverAt < 0)
+                    at = lastDeliverAt;
+                lastDeliverAt = at;
+                segments.add(segment);
+                deliverAt.add(at);
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Reads from the first segment that is due, waiting for one if none is.
+         *
+         * @return the number of bytes read, or -1 once the writer has closed and everything was read
+         */
+        int read(byte[] buffer, int offset, int length, int timeoutMillis) throws IOException {
+            if (length == 0)
+                return 0;
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            lock.lock();
+            try {
+                while (true) {
+                    if (readerClosed)
+                        throw new SocketException("Socket closed");
+                    long now = System.nanoTime();
+                    long wait = Long.MAX_VALUE;
+                    if (!segments.isEmpty()) {
+                        wait = deliverAt.peek() - now;
+                        if (wait <= 0) {
+                            byte[] head = segments.peek();
+                            int n = Math.min(length, head.length - headOffset);
+                            System.arraycopy(head, headOffset, buffer, offset, n);
+                            headOffset += n;
+                            if (headOffset == head.length) {
+                                segments.poll();
+                                deliverAt.poll();
+                                headOffset = 0;
+                            }
+                            return n;
+                        }
+                    } else if (writerClosed) {
+                        return -1;
+                    }
+                    if (timeoutMillis > 0) {
+                        if (deadline - now <= 0)
+                            throw new SocketTimeoutException("Read timed out");
+                        wait = Math.min(wait, deadline - now);
+                    }
+                    if (wait == Long.MAX_VALUE)
+                        changed.await();
+                    else
+                        changed.awaitNanos(wait);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SocketException("Read interrupted");
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void closeWriter() {
+            lock.lock();
+            try {
+                writerClosed = true;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void closeReader() {
+            lock.lock();
+            try {
+                readerClosed = true;
+                segments.clear();
+                deliverAt.clear();
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static class MemoryConnection implements Connection {
+
+        /** queued on a closed listener to wake whoever waits in accept */
+        static final MemoryConnection CLOSED = new MemoryConnection(0, null, null);
+
+        private final int remotePort;
+        private final Pipe in;
+        private final Pipe out;
+        private volatile int soTimeout;
+        private final InputStream input;
+        private final OutputStream output;
+
+        MemoryConnection(int remotePort, Pipe in, Pipe out) {
+            this.remotePort = remotePort;
+            this.in = in;
+            this.out = out;
+            this.input = new InputStream() {
+                public int read() throws IOException {
+                    byte[] b = new byte[1];
+                    return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+                }
+
+                public int read(byte[] b, int off, int len) throws IOException {
+                    return in.read(b, off, len, soTimeout);
+                }
+
+                public void close() {
+                    MemoryConnection.this.close();
+                }
+            };
+            this.output = new SegmentingOutputStream(out);
+        }
+
+        public InputStream getInputStream() {
+            return input;
+        }
+
+        public OutputStream getOutputStream() {
+            return output;
+        }
+
+        public int getRemotePort() {
+            return remotePort;
+        }
+
+        public void setSoTimeout(int timeoutMillis) {
+            soTimeout = timeoutMillis;
+        }
+
+        public void close() {
+            try {
+                // Bytes already written are on their way, as they would be on a socket.
+                output.flush();
+            } catch (IOException e) {
+                // The other end is gone; there is nobody to deliver to.
+            }
+            out.closeWriter();
+            in.closeReader();
+        }
+    }
+
+    /**
+     * Collects writes and sends them as one segment on flush, or sooner
+     * once a socket's worth of bytes is pending.
+     */
+    private static class SegmentingOutputStream extends OutputStream {
+
+        private static final int MAX_SEGMENT = 64 * 1024;
+
+        private final Pipe pipe;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+        SegmentingOutputStream(Pipe pipe) {
+            this.pipe = pipe;
+        }
+
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            lock.lock();
+            try {
+                pending.write(b, off, len);
+                if (pending.size() >= MAX_SEGMENT)
+                    flush();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public void flush() throws IOException {
+            lock.lock();
+            try {
+                if (pending.size() == 0)
+                    return;
+                byte[] segment = pending.toByteArray();
+                pending.reset();
+                pipe.send(segment);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
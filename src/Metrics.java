@@ -0,0 +1,285 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Latency histograms and counters for the phases of a ballot, kept per
+ * process. Recording is lock-free and allocates nothing, so it stays on
+ * the protocol path unconditionally.
+ *
+ * With -Dmetrics.port=N the current values are served as plain text at
+ * <code>http://localhost:N/</code>; with -Dmetrics.jmx=true they are also
+ * registered as MBeans under <code>voting:type=Histogram</code> and
+ * <code>voting:type=Counter</code>.
+ */
+public final class Metrics {
+
+    private static final Map<String, Histogram> histograms = new LinkedHashMap<>();
+    private static final Map<String, Counter> counters = new LinkedHashMap<>();
+
+    /** Coordinator: from a participant's JOIN to its ballot being full */
+    public static final Histogram JOIN_WAIT = histogram("coordinator_join_wait");
+    /** Coordinator: sending DETAILS and VOTE_OPTIONS to one participant */
+    public static final Histogram FAN_OUT = histogram("coordinator_fan_out");
+    /** Coordinator: from VOTE_OPTIONS sent to the participant's OUTCOME */
+    public static final Histogram COORDINATOR_OUTCOME = histogram("coordinator_time_to_outcome");
+    /** Participant: one round of the vote exchange */
+    public static final Histogram ROUND = histogram("participant_round");
+    /** Participant: from the start of a round to a peer's message for it, if read after the round started */
+    public static final Histogram PEER_READ = histogram("participant_peer_read");
+    /** Participant: from JOIN sent to OUTCOME sent */
+    public static final Histogram PARTICIPANT_OUTCOME = histogram("participant_time_to_outcome");
+    /** Either: round trip of a log datagram to its ACK */
+    public static final Histogram LOGGER_ACK = histogram("logger_ack_round_trip");
+    /** Either: participants detected as crashed */
+    public static final Counter CRASHES = counter("crashes_detected");
+
+    private Metrics() { }
+
+    private static Histogram histogram(String name) {
+        Histogram histogram = new Histogram(name);
+        histograms.put(name, histogram);
+        return histogram;
+    }
+
+    private static Counter counter(String name) {
+        Counter counter = new Counter(name);
+        counters.put(name, counter);
+        return counter;
+    }
+
+    /**
+     * Starts the HTTP endpoint and registers the MBeans as configured by
+     * the metrics.* system properties.
+     */
+    public static void exportFromSystemProperties() throws IOException {
+        if (Boolean.getBoolean("metrics.jmx"))
+            registerMBeans();
+        Integer port = Integer.getInteger("metrics.port");
+        if (port != null)
+            startHttpEndpoint(port);
+    }
+
+    public static void registerMBeans() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (Histogram histogram: histograms.values())
+                server.registerMBean(new StandardMBean(histogram, HistogramMBean.class),
+                        new ObjectName("voting:type=Histogram,name=" + histogram.name));
+            for (Counter counter: counters.values())
+                server.registerMBean(new StandardMBean(counter, CounterMBean.class),
+                        new ObjectName("voting:type=Counter,name=" + counter.name));
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Serves {@link #render()} on the loopback interface from a daemon
+     * thread, one short-lived connection per request.
+     */
+    public static void startHttpEndpoint(int port) throws IOException {
+        ServerSocket server = new ServerSocket(port, 16, InetAddress.getLoopbackAddress());
+        Thread thread = new Thread(() -> {
+            while (true) {
+                try (Socket client = server.accept()) {
+                    BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.US_ASCII));
+                    String line;
+                    while ((line = in.readLine()) != null && !line.isEmpty())
+                        ;
+                    byte[] body = render().getBytes(StandardCharsets.UTF_8);
+                    OutputStream out = client.getOutputStream();
+                    out.write(("HTTP/1.1 200 OK\r\nContent-Type: text/plain; version=0.0.4\r\nContent-Length: "
+                            + body.length + "\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                    out.write(body);
+                } catch (IOException e) {
+                    // The client went away; wait for the next one.
+                }
+            }
+        }, "metrics-http");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return every histogram and counter in the Prometheus text format, latencies in seconds
+     */
+    public static String render() {
+        StringBuilder out = new StringBuilder();
+        for (Histogram histogram: histograms.values()) {
+            String name = histogram.name + "_seconds";
+            out.append("# TYPE ").append(name).append(" summary\n");
+            for (double quantile: new double[] { 0.5, 0.9, 0.99, 0.999 })
+                out.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+                        .append(histogram.percentile(quantile * 100) / 1e9).append('\n');
+            out.append(name).append("_sum ").append(histogram.sum.sum() / 1e9).append('\n');
+            out.append(name).append("_count ").append(histogram.getCount()).append('\n');
+        }
+        for (Counter counter: counters.values()) {
+            out.append("# TYPE ").append(counter.name).append(" counter\n");
+            out.append(counter.name).append(' ').append(counter.getCount()).append('\n');
+        }
+        return out.toString();
+    }
+
+    /**
+     * JMX view of a {@link Histogram}; latencies in microseconds.
+     */
+    public interface HistogramMBean {
+        long getCount();
+        double getMeanMicros();
+        double getMaxMicros();
+        double getP50Micros();
+        double getP90Micros();
+        double getP99Micros();
+        double getP999Micros();
+    }
+
+    /**
+     * JMX view of a {@link Counter}.
+     */
+    public interface CounterMBean {
+        long getCount();
+    }
+
+    /**
+     * A log-linear histogram of nanosecond latencies: each power of two is
+     * split into {@code 2^SUB_BITS} buckets, so a reported percentile is
+     * within 12.5% of the recorded value.
+     */
+    public static final class Histogram implements HistogramMBean {
+
+        private static final int SUB_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+        private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+        final String name;
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        private Histogram(String name) {
+            this.name = name;
+        }
+
+        public void record(long nanos) {
+            if (nanos < 0)
+                nanos = 0;
+            buckets.incrementAndGet(bucket(nanos));
+            count.increment();
+            sum.add(nanos);
+            long current;
+            while (nanos > (current = max.get()) && !max.compareAndSet(current, nanos))
+                ;
+        }
+
+        /**
+         * Records the time elapsed since {@code startNanos}, a {@link System#nanoTime()} reading.
+         */
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        static int bucket(long value) {
+            if (value < SUB_BUCKETS)
+                return (int) value;
+            int magnitude = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (magnitude - SUB_BITS)) & (SUB_BUCKETS - 1);
+            return (magnitude - SUB_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+        /**
+         * @return the largest value that falls into {@code bucket}
+         */
+        static long upperBound(int bucket) {
+            if (bucket < SUB_BUCKETS)
+                return bucket;
+            int magnitude = bucket / SUB_BUCKETS + SUB_BITS - 1;
+            long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (magnitude - SUB_BITS);
+            return lower + (1L << (magnitude - SUB_BITS)) - 1;
+        }
+
+        /**
+         * @return the value below which {@code percent} percent of the recorded values fall, in nanoseconds
+         */
+        public long percentile(double percent) {
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++)
+                total += buckets.get(i);
+            if (total == 0)
+                return 0;
+            long rank = Math.max(1, (long) Math.ceil(total * percent / 100));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank)
+                    return Math.min(upperBound(i), max.get());
+            }
+            return max.get();
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public double getMeanMicros() {
+            long n = count.sum();
+            return n == 0 ? 0 : sum.sum() / 1e3 / n;
+        }
+
+        public double getMaxMicros() {
+            return max.get() / 1e3;
+        }
+
+        public double getP50Micros() {
+            return percentile(50) / 1e3;
+        }
+
+        public double getP90Micros() {
+            return percentile(90) / 1e3;
+        }
+
+        public double getP99Micros() {
+            return percentile(99) / 1e3;
+        }
+
+        public double getP999Micros() {
+            return percentile(99.9) / 1e3;
+        }
+    }
+
+    public static final class Counter implements CounterMBean {
+
+        final String name;
+        private final LongAdder count = new LongAdder();
+
+        private Counter(String name) {
+            this.name = name;
+        }
+
+        public void increment() {
+            count.increment();
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+    }
+}
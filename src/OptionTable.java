@@ -0,0 +1,73 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The options of a ballot interned to small int ids, so that votes can
+ * carry an id instead of a string.
+ *
+ * The ids of the options announced by VOTE_OPTIONS are their positions in
+ * that list, which is also how the binary framing writes them; an option
+ * listed twice keeps the id of its first position (see {@link #canonical}).
+ * The table is fixed once built: a vote for an option that was never
+ * announced has no id, and every tokenizer drops it rather than counting it.
+ */
+public class OptionTable {
+
+    private final int declared;
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final String[] names;
+    private final int[] canonical;
+
+    public OptionTable(List<String> options) {
+        this.declared = options.size();
+        this.names = options.toArray(new String[0]);
+        this.canonical = new int[declared];
+        for (int i = 0; i < declared; i++) {
+            Integer first = ids.putIfAbsent(names[i], i);
+            canonical[i] = first == null ? i : first;
+        }
+    }
+
+    /**
+     * @return the id of {@code option}, or -1 if it is not in the table
+     */
+    public int id(String option) {
+        Integer id = ids.get(option);
+        return id == null ? -1 : id;
+    }
+
+    public String name(int id) {
+        return names[id];
+    }
+
+    /**
+     * @return the id that votes for the option at {@code id} are counted under:
+     * the first position of its name
+     */
+    public int canonical(int id) {
+        return canonical[id];
+    }
+
+    /**
+     * @return the number of ids in use
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * @return the number of options announced by VOTE_OPTIONS
+     */
+    public int declared() {
+        return declared;
+    }
+
+    /**
+     * @return the announced options, in VOTE_OPTIONS order
+     */
+    public List<String> declaredNames() {
+        return Arrays.asList(names).subList(0, declared);
+    }
+}
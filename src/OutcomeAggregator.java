@@ -0,0 +1,167 @@
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tallies the OUTCOME messages of one ballot as they arrive.
+ *
+ * The result is declared as soon as {@code quorum} participants report the
+ * same outcome. Failing that it is declared, possibly without a quorum,
+ * once every participant has reported or crashed or at the deadline,
+ * whichever comes first. A second distinct outcome is flagged the moment
+ * it arrives.
+ */
+public class OutcomeAggregator {
+
+    private final int participants;
+    private final int quorum;
+    private final long timeoutMillis;
+    private final Map<String, Integer> tallies = new LinkedHashMap<>();
+    private final CompletableFuture<Result> result = new CompletableFuture<>();
+    private final CompletableFuture<Map<String, Integer>> disagreement = new CompletableFuture<>();
+    private String leader;
+    private int reported;
+    private int crashed;
+    private boolean clockStarted;
+
+    /**
+     * @param quorum how many matching outcomes decide the ballot
+     * @param timeoutMillis how long after {@link #startClock()} to wait for outcomes
+     */
+    public OutcomeAggregator(int participants, int quorum, long timeoutMillis) {
+        this.participants = participants;
+        this.quorum = Math.max(1, Math.min(quorum, participants));
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * @return a quorum of a strict majority of {@code participants}, or -Dcoordinator.quorum if set
+     */
+    public static int quorumFromSystemProperties(int participants) {
+        return Integer.getInteger("coordinator.quorum", participants / 2 + 1);
+    }
+
+    /**
+     * Starts the deadline; called once the ballot is full and the vote is under way.
+     */
+    public synchronized void startClock() {
+        if (clockStarted)
+            return;
+        clockStarted = true;
+        CompletableFuture.delayedExecutor(timeoutMillis, TimeUnit.MILLISECONDS).execute(this::expire);
+    }
+
+    public synchronized void outcomeReceived(String outcome) {
+        reported++;
+        int count = tallies.merge(outcome, 1, Integer::sum);
+        if (leader == null || count > tallies.get(leader)
+                || (count == tallies.get(leader) && outcome.compareTo(leader) < 0))
+            leader = outcome;
+        if (tallies.size() > 1)
+            disagreement.complete(Collections.unmodifiableMap(new HashMap<>(tallies)));
+        settle();
+    }
+
+    public synchronized void participantCrashed() {
+        crashed++;
+        settle();
+    }
+
+    private synchronized void expire() {
+        declare(true);
+    }
+
+    private void settle() {
+        int leading = leader == null ? 0 : tallies.get(leader);
+        if (leading >= quorum || reported + crashed >= participants)
+            declare(false);
+    }
+
+    private void declare(boolean timedOut) {
+        if (result.isDone())
+            return;
+        int agreeing = leader == null ? 0 : tallies.get(leader);
+        result.complete(new Result(leader, agreeing, reported, participants, agreeing >= quorum,
+                tallies.size() > 1, timedOut));
+    }
+
+    /**
+     * @return completes with the result when it is declared
+     */
+    public CompletableFuture<Result> result() {
+        return result;
+    }
+
+    /**
+     * @return completes with the tallies so far as soon as two participants report different outcomes
+     */
+    public CompletableFuture<Map<String, Integer>> disagreement() {
+        return disagreement;
+    }
+
+    public synchronized Map<String, Integer> getTallies() {
+        return new HashMap<>(tallies);
+    }
+
+    /**
+     * The outcome of a ballot as declared by its {@link OutcomeAggregator}.
+     */
+    public static class Result {
+
+        private final String outcome;
+        private final int agreeing;
+        private final int reported;
+        private final int participants;
+        private final boolean quorumReached;
+        private final boolean disagreement;
+        private final boolean timedOut;
+
+        Result(String outcome, int agreeing, int reported, int participants, boolean quorumReached,
+               boolean disagreement, boolean timedOut) {
+            this.outcome = outcome;
+            this.agreeing = agreeing;
+            this.reported = reported;
+            this.participants = participants;
+            this.quorumReached = quorumReached;
+            this.disagreement = disagreement;
+            this.timedOut = timedOut;
+        }
+
+        /**
+         * @return the outcome reported most often, the lexically first on a tie, or null if none was reported
+         */
+        public String getOutcome() {
+            return outcome;
+        }
+
+        public int getAgreeing() {
+            return agreeing;
+        }
+
+        public int getReported() {
+            return reported;
+        }
+
+        public int getParticipants() {
+            return participants;
+        }
+
+        public boolean isQuorumReached() {
+            return quorumReached;
+        }
+
+        /**
+         * @return whether different outcomes had been reported by the time the result was declared
+         */
+        public boolean isDisagreement() {
+            return disagreement;
+        }
+
+        public boolean isTimedOut() {
+            return timedOut;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+import java.util.List;
+
+/**
+ * A reusable, primitive-backed request. Which fields are meaningful depends
+ * on {@link #type}: JOIN and DETAILS use {@link #ports}, VOTE pairs
+ * {@link #ports} with {@link #options}, OUTCOME uses {@link #outcome} and
+ * {@link #ports}, DONE uses none. Options are indices into {@link #optionNames}.
+ */
+class ParsedToken {
+
+    static final int NONE = 0;
+    static final int JOIN = 1;
+    static final int DETAILS = 2;
+    static final int VOTE_OPTIONS = 3;
+    static final int VOTE = 4;
+    static final int OUTCOME = 5;
+    static final int DONE = 6;
+
+    int type;
+    int session;
+    int round;
+    boolean binary;
+    int count;
+    int[] ports = new int[16];
+    int[] options = new int[16];
+    int outcome;
+    List<String> optionList;
+    String[] optionNames;
+
+    void reset(String[] optionNames) {
+        type = NONE;
+        session = 0;
+        round = 0;
+        binary = false;
+        count = 0;
+        outcome = -1;
+        optionList = null;
+        this.optionNames = optionNames;
+    }
+
+    void addPort(int port) {
+        ensureCapacity();
+        ports[count++] = port;
+    }
+
+    void addVote(int port, int option) {
+        ensureCapacity();
+        ports[count] = port;
+        options[count++] = option;
+    }
+
+    private void ensureCapacity() {
+        if (count == ports.length) {
+            ports = java.util.Arrays.copyOf(ports, count * 2);
+            options = java.util.Arrays.copyOf(options, count * 2);
+        }
+    }
+
+    String optionName(int option) {
+        return option < 0 ? "?" : optionNames[option];
+    }
+
+    /**
+     * @return the text form of this request; allocates, so only for logging
+     */
+    String message() {
+        StringBuilder msg = new StringBuilder();
+        if (session != 0)
+            msg.append("SESSION ").append(session).append(' ');
+        if (round != 0)
+            msg.append("ROUND ").append(round).append(' ');
+        switch (type) {
+        case JOIN:
+            msg.append("JOIN ").append(ports[0]);
+            if (binary)
+                msg.append(" BINARY");
+            return msg.toString();
+        case DETAILS:
+            msg.append("DETAILS");
+            for (int i = 0; i < count; i++)
+                msg.append(' ').append(ports[i]);
+            return msg.toString();
+        case VOTE_OPTIONS:
+            msg.append("VOTE_OPTIONS");
+            for (String option: optionList)
+                msg.append(' ').append(option);
+            return msg.toString();
+        case VOTE:
+            msg.append("VOTE");
+            for (int i = 0; i < count; i++)
+                msg.append(' ').append(ports[i]).append(' ').append(optionName(options[i]));
+            return msg.toString();
+        case OUTCOME:
+            msg.append("OUTCOME ").append(optionName(outcome));
+            for (int i = 0; i < count; i++)
+                msg.append(' ').append(ports[i]);
+            return msg.toString();
+        case DONE:
+            return msg.append("DONE").toString();
+        default:
+            return null;
+        }
+    }
+}
@@ -2,64 +2,119 @@ import java.io.*;
 import java.net.*;
 import java.nio.Buffer;
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class Participant {
 
     private int coordinatorPort;
     private int loggerServerPort;
     private int thisParticipantPort;
+    private int sessionId;
     private int timeOut;
     private String outcome;
     private ReqTokenizer tokenizer;
     private List<Integer> participantPorts;
-    private List<String> options;
-    private List<Socket> participants;
+    private Topology topology;
+    private OptionTable options;
+    /** every peer connection, dialled or accepted, so that an injected crash can close them all */
+    private List<Transport.Connection> participants;
     private ParticipantLogger logger;
-    private Socket coordinatorSocket;
+    private Transport transport;
+    private Transport.Connection coordinatorSocket;
     private BufferedReader in;
     private PrintWriter out;
-    private ServerSocket serverSocket;
-    private volatile List<Vote> newVotes;
-    private volatile List<Vote> currentVotes;
+    private Transport.Listener listener;
+    private VoteStore votes;
+    private TallyEngine tally;
     private volatile boolean sendingVotes = true;
-    private volatile boolean receiverSetUpDone = false;
-    private volatile boolean senderSetUpDone = false;
+    private final boolean binaryFraming = Boolean.getBoolean("protocol.binary");
+    private final boolean earlyStop = Boolean.getBoolean("participant.earlyStop");
+    private final boolean pipelined = Boolean.getBoolean("participant.pipelined");
+    private final BlockingQueue<OutgoingRound> outbox = new LinkedBlockingQueue<>();
+    private volatile boolean exchangeDone = false;
+    private volatile boolean crashedByFault;
+    private long startedAt;
+    private long setupDeadline;
+    private WriteAheadLog wal;
+    private int lastRound;
     private volatile List<Integer> crashedParticipants = Collections.synchronizedList(new ArrayList<>());
-    private final Object monitor = new Object();
-    private final Object setUpConnectionMonitor = new Object();
+    /** Passes the lockstep exchange between the Sender and the Receiver, as {@link #sendingVotes} says whose turn it is */
+    private final ReentrantLock turn = new ReentrantLock();
+    private final Condition turnChanged = turn.newCondition();
+    /** Counted down once by the Receiver and once by the Sender when their side of the mesh is up */
+    private final CountDownLatch meshReady = new CountDownLatch(2);
 
     public Participant(int coordinatorPort, int loggerServerPort, int thisParticipantPort, int timeOut) throws Exception {
+        this(coordinatorPort, loggerServerPort, thisParticipantPort, timeOut, 0);
+    }
+
+    /**
+     * @param sessionId the ballot to join on a Coordinator hosting several sessions; 0 for the default ballot
+     */
+    public Participant(int coordinatorPort, int loggerServerPort, int thisParticipantPort, int timeOut, int sessionId) throws Exception {
+        this(coordinatorPort, loggerServerPort, thisParticipantPort, timeOut, sessionId, Transport.fromSystemProperties());
+    }
+
+    /**
+     * @param transport what to reach the Coordinator and the other participants over
+     */
+    public Participant(int coordinatorPort, int loggerServerPort, int thisParticipantPort, int timeOut, int sessionId,
+                       Transport transport) throws Exception {
+        this.transport = transport;
         this.coordinatorPort = coordinatorPort;
+        this.sessionId = sessionId;
         this.loggerServerPort = loggerServerPort;
         this.thisParticipantPort = thisParticipantPort;
         this.timeOut = timeOut;
-        ParticipantLogger.initLogger(loggerServerPort, thisParticipantPort, timeOut);
-        this.logger = ParticipantLogger.getLogger();
+        this.logger = ParticipantLogger.newLogger(loggerServerPort, thisParticipantPort, timeOut);
         tokenizer = new ReqTokenizer();
-        participants = new ArrayList<>();
-        serverSocket = new ServerSocket(thisParticipantPort);
-        newVotes = Collections.synchronizedList(new ArrayList<>());
-        currentVotes = Collections.synchronizedList(new ArrayList<>());
+        participants = new CopyOnWriteArrayList<>();
+        listener = transport.listen(thisParticipantPort);
+        wal = WriteAheadLog.fromSystemProperties("participant_" + thisParticipantPort);
     }
 
     public void joinCoordinator() throws InterruptedException {
+        joinCoordinator(Long.MAX_VALUE);
+    }
+
+    /**
+     * Joins the Coordinator, retrying until {@code deadline} (in
+     * currentTimeMillis terms).
+     *
+     * @return false if the Coordinator could not be reached by then
+     */
+    private boolean joinCoordinator(long deadline) throws InterruptedException {
+        if (startedAt == 0)
+            startedAt = System.nanoTime();
         boolean joined = false;
+        int attempt = 0;
         while (!joined) {
+            if (System.currentTimeMillis() > deadline)
+                return false;
             try{
-                coordinatorSocket = new Socket("localhost", coordinatorPort);
+                coordinatorSocket = transport.connect(coordinatorPort, 0);
                 in = new BufferedReader(new InputStreamReader(coordinatorSocket.getInputStream()));
-                out = new PrintWriter(new OutputStreamWriter(coordinatorSocket.getOutputStream()), true);
+                out = new PrintWriter(new OutputStreamWriter(coordinatorSocket.getOutputStream()));
                 joined = true;
 
-                String joinToken = "JOIN " + thisParticipantPort;
-                out.println(joinToken);
+                JoinToken joinToken = new JoinToken(null, thisParticipantPort);
+                joinToken._session = sessionId;
+                out.println(joinToken.message());
+                out.flush();
                 logger.messageSent(coordinatorPort, joinToken);
-                logger.joinSent(coordinatorPort);
+                logger.joinSent(coordinatorPort, sessionId);
             }
             catch (IOException e) {
-                Thread.sleep(1000);
+                Thread.sleep(PeerConnector.backoff(attempt++));
             }
         }
+        return true;
     }
 
     public void receiveDetails() throws IOException {
@@ -67,80 +122,270 @@ public class Participant {
         logger.messageReceived(coordinatorPort, details);
         Token token = tokenizer.getToken(details);
         if (token instanceof DetailsToken) {
-            participantPorts = ((DetailsToken) token)._portList;
+            setDetails(((DetailsToken) token)._portList);
             logger.detailsReceived(participantPorts);
+            walAppend(detailsRecord());
         }
     }
 
+    private void setDetails(List<Integer> ports) {
+        participantPorts = ports;
+        topology = Topology.fromSystemProperties(thisParticipantPort, participantPorts);
+    }
+
     public void receiveVoteOptions() throws IOException {
         String voteOptions = in.readLine();
         logger.messageReceived(coordinatorPort, voteOptions);
         Token token = tokenizer.getToken(voteOptions);
         if (token instanceof VoteOptionsToken) {
-            options = ((VoteOptionsToken) token).optionList;
-            logger.voteOptionsReceived(options);
+            List<String> optionList = ((VoteOptionsToken) token).optionList;
+            setOptions(optionList);
+            logger.voteOptionsReceived(optionList);
+            walAppend("OPTIONS " + String.join(" ", optionList));
         }
+        // Every participant gets VOTE_OPTIONS at about the same time, so this
+        // bounds how long the mesh may take to form.
+        setupDeadline = System.currentTimeMillis() + Long.getLong("participant.setupTimeout", 10000);
+    }
+
+    private void setOptions(List<String> optionList) {
+        options = new OptionTable(optionList);
+        tokenizer.setOptions(options);
+        votes = new VoteStore(options);
+        tally = TallyEngine.fromSystemProperties(options);
+    }
+
+    /**
+     * Picks this participant's own vote.
+     */
+    private void castVote() {
+        int option = options.canonical(new Random().nextInt(options.declared()));
+        votes.add(thisParticipantPort, option);
+        walAppend("VOTE " + thisParticipantPort + " " + options.name(option));
+    }
+
+    /**
+     * Replays the write-ahead log (-Dwal.dir) that a previous run on this
+     * port left behind. If that run had finished the vote exchange, all that
+     * is left is to decide, if it had not yet, and report the outcome. A run
+     * that stopped during the exchange cannot rejoin it: its peers have
+     * already counted it as crashed, and the Coordinator has sent the
+     * details of the ballot to everyone it will. Its log is discarded and
+     * nothing is reported, exactly as if it had stayed down.
+     *
+     * @return true if the previous run had finished the exchange
+     */
+    public boolean recover() throws IOException, InterruptedException {
+        if (wal == null || wal.isEmpty())
+            return false;
+        boolean exchanged = false;
+        List<String> records = new ArrayList<>(wal.recoveredCheckpoint());
+        records.addAll(wal.recoveredRecords());
+        for (String record: records) {
+            String[] fields = record.split(" ");
+            switch (fields[0]) {
+                case "DETAILS":
+                    List<Integer> ports = new ArrayList<>();
+                    for (int i = 1; i < fields.length; i++)
+                        ports.add(Integer.parseInt(fields[i]));
+                    setDetails(ports);
+                    break;
+                case "OPTIONS":
+                    setOptions(new ArrayList<>(Arrays.asList(fields).subList(1, fields.length)));
+                    break;
+                case "VOTE":
+                case "ROUND":
+                    int first = fields[0].equals("VOTE") ? 1 : 2;
+                    if (first == 2)
+                        lastRound = Integer.parseInt(fields[1]);
+                    for (int i = first; i + 1 < fields.length; i += 2) {
+                        int option = options.id(fields[i + 1]);
+                        if (option >= 0)
+                            votes.add(Integer.parseInt(fields[i]), option);
+                    }
+                    break;
+                case "EXCHANGED":
+                    exchanged = true;
+                    break;
+                case "OUTCOME":
+                    outcome = fields[1];
+                    participantPorts = new ArrayList<>();
+                    for (int i = 2; i < fields.length; i++)
+                        participantPorts.add(Integer.parseInt(fields[i]));
+                    break;
+            }
+        }
+        if (!exchanged) {
+            System.err.println("Participant " + thisParticipantPort + " stopped in round " + lastRound
+                    + " of the last vote exchange and was counted as crashed; reporting nothing");
+            wal.delete();
+        }
+        return exchanged;
+    }
+
+    /**
+     * Marks the vote exchange as over in the write-ahead log.
+     */
+    public void exchangeFinished() {
+        walAppend("EXCHANGED");
+    }
+
+    private String detailsRecord() {
+        StringBuilder record = new StringBuilder("DETAILS");
+        for (Integer port: participantPorts)
+            record.append(' ').append(port);
+        return record.toString();
+    }
+
+    /**
+     * Queues {@code record} for the write-ahead log, if there is one, and
+     * takes a checkpoint when one is due.
+     */
+    private void walAppend(String record) {
+        if (wal == null)
+            return;
+        wal.append(record);
+        if (wal.needsCheckpoint()) {
+            try {
+                wal.checkpoint(this::snapshot);
+            } catch (IOException | InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * @return the write-ahead log records that rebuild the current state
+     */
+    private List<String> snapshot() {
+        List<String> records = new ArrayList<>();
+        records.add(detailsRecord());
+        records.add("OPTIONS " + String.join(" ", options.declaredNames()));
+        StringBuilder round = new StringBuilder("ROUND ").append(lastRound);
+        votes.allVotes().appendTo(round);
+        records.add(round.toString());
+        return records;
     }
 
     public void decide() {
-        String[] sortedVotes = lexicalGraphicalSort(currentVotes);
-        outcome = getMajority(sortedVotes);
+        outcome = tally.decide(votes);
         participantPorts.add(thisParticipantPort);
         logger.outcomeDecided(outcome, participantPorts);
     }
 
-    public void informOutcome() {
-        String outcomeToken = "OUTCOME " + outcome;
-
-        for (Integer port: participantPorts) {
-            outcomeToken += " " + port;
+    public void informOutcome() throws IOException, InterruptedException {
+        StringBuilder ports = new StringBuilder();
+        for (Integer port: participantPorts)
+            ports.append(' ').append(port);
+        OutcomeToken outcomeToken = new OutcomeToken(null, outcome, ports.toString());
+        if (wal != null) {
+            // A restart must report the same outcome, so it is made durable first.
+            wal.appendAndSync(outcomeToken.message());
+            if (!coordinatorAlive())
+                joinCoordinator();
         }
-        out.println(outcomeToken);
+        out.println(outcomeToken.message());
+        out.flush();
         logger.messageSent(coordinatorPort, outcomeToken);
         logger.outcomeNotified(outcome, participantPorts);
+        Metrics.PARTICIPANT_OUTCOME.recordSince(startedAt);
+        if (wal != null)
+            wal.delete();
     }
 
-    public String[] lexicalGraphicalSort(List<Vote> currentVotes) {
-        String[] votes = new String[currentVotes.size()];
-        for (int i = 0; i < votes.length; i++) {
-            votes[i] = currentVotes.get(i).getVote();
-        }
-        for (int i = 0; i < votes.length; i++) {
-            for (int j = 1 + 1; j < votes.length; j++) {
-                if (votes[i].compareTo(votes[j]) > 0) {
-                    String temp = votes[i];
-                    votes[i] = votes[j];
-                    votes[j] = temp;
+    /**
+     * @return false if the Coordinator has closed the connection, as it
+     * does when it stops; it sends nothing more after VOTE_OPTIONS
+     */
+    private boolean coordinatorAlive() {
+        try {
+            coordinatorSocket.setSoTimeout(1);
+            return in.read() >= 0;
+        } catch (SocketTimeoutException e) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Takes part in the ballot from joining it to reporting the outcome,
+     * or finishes the part a previous run on this port left off. Reporting
+     * a recovered outcome gives up if the Coordinator cannot be reached
+     * within -Dparticipant.setupTimeout.
+     */
+    public void takePart() throws IOException, InterruptedException {
+        try {
+            if (wal != null && !wal.isEmpty()) {
+                // The exchange is over or was lost; either way no peer will dial in.
+                listener.close();
+                if (!recover())
+                    return;
+                if (!joinCoordinator(System.currentTimeMillis() + Long.getLong("participant.setupTimeout", 10000))) {
+                    System.err.println("Participant " + thisParticipantPort + " could not reach Coordinator "
+                            + coordinatorPort + " to report the recovered outcome");
+                    return;
                 }
+                if (outcome == null)
+                    decide();
+                informOutcome();
+                return;
             }
+            joinCoordinator();
+            receiveDetails();
+            receiveVoteOptions();
+
+            Thread receiver = Threads.start("receiver-" + thisParticipantPort, new Receiver(), false);
+            Thread sender = Threads.start("sender-" + thisParticipantPort, new Sender(), false);
+
+            sender.join();
+            receiver.join();
+            if (crashedByFault)
+                return;
+            exchangeFinished();
+            decide();
+            informOutcome();
+        } finally {
+            // Many participants may share this JVM; each releases its own logger.
+            logger.close();
         }
-        return votes;
     }
 
-    public String getMajority(String[] sortedVotes) {
-        Map<String, Integer> map = new HashMap<>();
-
-        for (String vote : sortedVotes) {
-            String selectedVote = vote;
-            Integer val = map.get(selectedVote);
-            map.put(selectedVote, val == null ? 1 : val + 1);
+    /**
+     * Crashes this participant for {@link FaultInjector} when other
+     * participants share its JVM: closes its connection to the Coordinator
+     * and every peer connection, as the system would for a halted process,
+     * and stops the Receiver at the start of its next round.
+     */
+    private void crash() {
+        crashedByFault = true;
+        exchangeDone = true;
+        List<Transport.Connection> connections = new ArrayList<>(participants);
+        connections.add(coordinatorSocket);
+        for (Transport.Connection connection: connections) {
+            try {
+                connection.close();
+            } catch (IOException e) {
+                // Already gone.
+            }
         }
-
-        Map.Entry<String, Integer> max = null;
-
-        for (Map.Entry<String, Integer> e : map.entrySet()) {
-            if (max == null || e.getValue() > max.getValue())
-                max = e;
+        turn.lock();
+        try {
+            turnChanged.signalAll();
+        } finally {
+            turn.unlock();
         }
-        return max.getKey();
     }
 
-    public class Receiver extends Thread {
+    public class Receiver implements Runnable {
 
-        private Map<Integer, BufferedReader> idInputStreamMap;
-        private Map<Integer, Socket> idSocketMap;
+        private Map<Integer, TokenReader> idInputStreamMap;
+        private Map<Integer, Transport.Connection> idSocketMap;
         private Map<Integer, Integer> portMap;
+        private final BlockingQueue<PeerMessage> inbox = new LinkedBlockingQueue<>();
+        private final Deque<PeerMessage> nextRound = new ArrayDeque<>();
         private int round = 1;
+        private long roundStartedAt;
 
         public Receiver() {
             idInputStreamMap = new HashMap<>();
@@ -150,88 +395,284 @@ public class Participant {
 
         public void startListening() throws IOException {
             logger.startedListening();
-            for (int i = 0; i < participantPorts.size(); i++) {
-                Socket otherParticipant = serverSocket.accept();
-                BufferedReader in = new BufferedReader(new InputStreamReader(otherParticipant.getInputStream()));
-                String joinMsg = in.readLine();
-                int participantId = Integer.parseInt(joinMsg.split(" ")[1]);
-                otherParticipant.setSoTimeout(timeOut);
-                portMap.put(otherParticipant.getPort(), participantId);
-                idInputStreamMap.put(otherParticipant.getPort(), in);
-                idSocketMap.put(otherParticipant.getPort(), otherParticipant);
-                logger.connectionAccepted(otherParticipant.getPort());
+            try {
+                int accepted = 0;
+                while (accepted < topology.getReceiveFromCount()) {
+                    long remaining = setupDeadline - System.currentTimeMillis();
+                    if (remaining <= 0)
+                        break;
+                    if (accept(listener.accept((int) remaining)))
+                        accepted++;
+                }
+            } catch (SocketTimeoutException e) {
+                // Whoever has not connected by now is treated as crashed in round 1.
+            } finally {
+                // The mesh is set; a peer dialling later is refused and counted as crashed.
+                listener.close();
+                meshReady.countDown();
+            }
+        }
+
+        /**
+         * Reads the JOIN a peer opens its connection with, waiting no later
+         * than the setup deadline, so that a peer that connects and then
+         * says nothing cannot hold up the mesh.
+         *
+         * @return false if the connection was closed for not starting with JOIN in time
+         */
+        private boolean accept(Transport.Connection otherParticipant) throws IOException {
+            InputStream raw = new BufferedInputStream(otherParticipant.getInputStream());
+            Token token;
+            try {
+                otherParticipant.setSoTimeout((int) Math.max(1, setupDeadline - System.currentTimeMillis()));
+                String line = BinaryCodec.readLine(raw);
+                token = line == null ? null : tokenizer.getToken(line);
+                otherParticipant.setSoTimeout(0);
+            } catch (SocketTimeoutException | NumberFormatException e) {
+                token = null;
+            }
+            if (!(token instanceof JoinToken)) {
+                otherParticipant.close();
+                return false;
             }
-            receiverSetUpDone = true;
+            JoinToken join = (JoinToken) token;
+            int participantId = join._id;
+            TokenReader in = join.binary
+                    ? new BinaryTokenReader(raw, new BinaryCodec(options))
+                    : new StreamingTokenReader(raw, new StreamingTokenizer(options));
+            portMap.put(otherParticipant.getRemotePort(), participantId);
+            idInputStreamMap.put(otherParticipant.getRemotePort(), in);
+            idSocketMap.put(otherParticipant.getRemotePort(), otherParticipant);
+            participants.add(otherParticipant);
+            logger.connectionAccepted(otherParticipant.getRemotePort());
+            return true;
         }
 
         public void receiveVotes() throws IOException, InterruptedException {
-            synchronized (setUpConnectionMonitor) {
-                while (!senderSetUpDone) {
-                    setUpConnectionMonitor.wait();
-                }
-                setUpConnectionMonitor.notify();
+            meshReady.await();
+            for (Map.Entry<Integer, TokenReader> entry: idInputStreamMap.entrySet()) {
+                Threads.start("peer-reader-" + entry.getKey(), new PeerReader(entry.getKey(), entry.getValue()), true);
             }
-            for (int i = 0; i < participantPorts.size()+1; i++) {
+            roundStartedAt = System.nanoTime();
+            if (pipelined) {
+                receivePipelined();
+                return;
+            }
+            for (int i = 0; i < participantPorts.size()+1 && !exchangeDone; i++) {
                 receiveRoundNVotes();
             }
         }
 
         public void receiveRoundNVotes() throws IOException, InterruptedException {
-            synchronized (monitor) {
-                while (sendingVotes) {
-                    monitor.wait();
+            turn.lock();
+            try {
+                while (sendingVotes && !crashedByFault) {
+                    turnChanged.await();
                 }
+                if (crashedByFault)
+                    return;
+                votes.beginRound();
+                Set<Integer> pending = new HashSet<>(idInputStreamMap.keySet());
                 List<Integer> portToRemove = new ArrayList<>();
-                for (Map.Entry<Integer, BufferedReader> entry: idInputStreamMap.entrySet()) {
-                    int participantPort = entry.getKey();
-                    try {
-                        String msg = entry.getValue().readLine();
-                        Token token = tokenizer.getToken(msg);
-                        logger.messageReceived(participantPort, msg);
-                        if (token instanceof VoteToken) {
-                            List<Vote> votes = ((VoteToken) token).vote;
-                            List<Vote> temp = new ArrayList<>();
-                            for (Vote vote: votes) {
-                                if (isNewVote(vote)) {
-                                    temp.add(vote);
-                                }
-                            }
-                            logger.votesReceived(portMap.get(participantPort), votes);
-                            newVotes.addAll(temp);
-                        }
-                    } catch (SocketTimeoutException e) {
-                        crashedParticipants.add(portMap.get(participantPort));
-                        portToRemove.add(participantPort);
-                        logger.participantCrashed(portMap.get(participantPort));
+                long deadline = System.currentTimeMillis() + timeOut;
+                Deque<PeerMessage> carriedOver = new ArrayDeque<>(nextRound);
+                nextRound.clear();
+                while (!pending.isEmpty()) {
+                    PeerMessage msg = carriedOver.poll();
+                    if (msg == null) {
+                        long remaining = deadline - System.currentTimeMillis();
+                        if (remaining <= 0)
+                            break;
+                        msg = inbox.poll(remaining, TimeUnit.MILLISECONDS);
+                        if (msg == null)
+                            break;
+                    }
+                    if (!idInputStreamMap.containsKey(msg.remotePort))
+                        continue;
+                    if (!pending.remove(msg.remotePort)) {
+                        // A peer that already reported this round is one round ahead of us.
+                        nextRound.add(msg);
+                        continue;
                     }
+                    if (msg.closed)
+                        portToRemove.add(msg.remotePort);
+                    else if (msg.done)
+                        peerFinished(msg);
+                    else
+                        applyRoundVotes(msg);
+                }
+                portToRemove.addAll(pending);
+                for (Integer participantPort: portToRemove) {
+                    crashedParticipants.add(portMap.get(participantPort));
+                    logger.participantCrashed(portMap.get(participantPort));
+                    Metrics.CRASHES.increment();
                 }
                 removeCrashedParticipants(portToRemove);
-                currentVotes.addAll(newVotes);
                 logger.endRound(round);
+                walEndRound(round);
+                endRoundTimer();
+                if (earlyStop && canStopExchange(!portToRemove.isEmpty()))
+                    exchangeDone = true;
                 round++;
                 sendingVotes = true;
-                monitor.notify();
+                turnChanged.signal();
+            } finally {
+                turn.unlock();
             }
         }
 
-        public void removeCrashedParticipants(List<Integer> portToRemove) {
-            for (Integer port: portToRemove) {
-                idInputStreamMap.remove(port);
-                idSocketMap.remove(port);
+        /**
+         * The exchange with -Dparticipant.pipelined=true. VOTE messages are
+         * tagged with their round, so they need no lockstep to be matched
+         * up: this thread alone owns the VoteStore and closes rounds, handing
+         * each next round to the Sender through the outbox and going straight
+         * on to read the next one. Messages from peers already ahead are
+         * buffered under their round until it comes up.
+         */
+        private void receivePipelined() throws InterruptedException {
+            Map<Integer, List<PeerMessage>> early = new HashMap<>();
+            int lastRound = participantPorts.size() + 1;
+            try {
+                votes.beginRound();
+                castVote();
+                outbox.put(new OutgoingRound(round, votes.learnedThisRound(), Collections.emptyList()));
+                for (; round <= lastRound && !crashedByFault; round++) {
+                    votes.beginRound();
+                    Set<Integer> pending = new HashSet<>(idInputStreamMap.keySet());
+                    List<Integer> portToRemove = new ArrayList<>();
+                    long deadline = System.currentTimeMillis() + timeOut;
+                    Deque<PeerMessage> buffered = new ArrayDeque<>(early.getOrDefault(round, Collections.emptyList()));
+                    early.remove(round);
+                    while (!pending.isEmpty()) {
+                        PeerMessage msg = buffered.poll();
+                        if (msg == null) {
+                            long remaining = deadline - System.currentTimeMillis();
+                            if (remaining <= 0)
+                                break;
+                            msg = inbox.poll(remaining, TimeUnit.MILLISECONDS);
+                            if (msg == null)
+                                break;
+                        }
+                        if (!idInputStreamMap.containsKey(msg.remotePort))
+                            continue;
+                        int msgRound = msg.closed || msg.round == 0 ? round : msg.round;
+                        if (msgRound == round && !pending.contains(msg.remotePort))
+                            msgRound = round + 1;
+                        if (msgRound > round) {
+                            early.computeIfAbsent(msgRound, r -> new ArrayList<>()).add(msg);
+                            continue;
+                        }
+                        if (msgRound < round) {
+                            // Late, but its votes still count.
+                            applyVotes(msg);
+                            continue;
+                        }
+                        pending.remove(msg.remotePort);
+                        if (msg.closed)
+                            portToRemove.add(msg.remotePort);
+                        else if (msg.done)
+                            peerFinished(msg);
+                        else
+                            applyRoundVotes(msg);
+                    }
+                    portToRemove.addAll(pending);
+                    List<Integer> crashed = new ArrayList<>();
+                    for (Integer participantPort: portToRemove) {
+                        crashed.add(portMap.get(participantPort));
+                        logger.participantCrashed(portMap.get(participantPort));
+                        Metrics.CRASHES.increment();
+                    }
+                    removeCrashedParticipants(portToRemove);
+                    logger.endRound(round);
+                    walEndRound(round);
+                    endRoundTimer();
+                    if (round == lastRound || (earlyStop && canStopExchange(!portToRemove.isEmpty())))
+                        break;
+                    outbox.put(new OutgoingRound(round + 1, votes.learnedThisRound(), crashed));
+                }
+            } finally {
+                exchangeDone = true;
+                outbox.put(OutgoingRound.DONE);
             }
         }
 
-        public boolean isNewVote(Vote voteToCheck) {
-            boolean newVote = true;
-            if (currentVotes.size() > 1) {
-                for (Vote vote: currentVotes) {
-                    if (vote.getParticipantPort() == voteToCheck.getParticipantPort() && vote.getVote().equals(voteToCheck.getVote())) {
-                        newVote = false;
-                        break;
-                    }
+        /**
+         * Early stopping, enabled with -Dparticipant.earlyStop=true. A round
+         * that taught this participant no new vote means everything it knows
+         * has already been relayed to every live peer. If the round also
+         * showed no new crash, no live peer can know a vote it does not, as
+         * any such vote would have reached it this round or its sender would
+         * have been seen to crash; if every participant's vote is known there
+         * is nothing left to learn anyway. Either way further rounds cannot
+         * change the outcome, so with no failures the exchange ends after
+         * round 2 instead of running one round per participant. The Sender
+         * then ends each connection with DONE, so peers that run on do not
+         * wait out a round for this participant and count it as crashed.
+         *
+         * This relies on hearing from every live participant directly, so a
+         * sparser {@link Topology} always runs every round.
+         */
+        private boolean canStopExchange(boolean crashSeen) {
+            if (!topology.isFullMesh() || votes.learnedThisRoundCount() > 0)
+                return false;
+            return !crashSeen || votes.size() == participantPorts.size() + 1;
+        }
+
+        private void walEndRound(int round) {
+            if (wal == null)
+                return;
+            lastRound = round;
+            StringBuilder record = new StringBuilder("ROUND ").append(round);
+            votes.learnedThisRound().appendTo(record);
+            walAppend(record.toString());
+        }
+
+        private void endRoundTimer() {
+            long now = System.nanoTime();
+            Metrics.ROUND.record(now - roundStartedAt);
+            roundStartedAt = now;
+        }
+
+        /**
+         * Applies a peer's message for the current round, recording how far
+         * into the round it arrived. One read before the round started, while
+         * this participant was still on an earlier round, was already waiting
+         * and is not timed.
+         */
+        private void applyRoundVotes(PeerMessage msg) {
+            if (msg.receivedAt >= roundStartedAt)
+                Metrics.PEER_READ.record(msg.receivedAt - roundStartedAt);
+            applyVotes(msg);
+        }
+
+        private void applyVotes(PeerMessage msg) {
+            logger.messageReceived(msg.remotePort, msg.text);
+            if (msg.votes == null)
+                return;
+            for (int v = 0; v < msg.votes.size(); v++)
+                votes.add(msg.votes.portAt(v), msg.votes.optionAt(v));
+            logger.votesReceived(portMap.get(msg.remotePort), msg.votes);
+        }
+
+        /**
+         * Stops waiting for a peer that sent DONE. It stopped the exchange
+         * early and has nothing left to send, so unlike a peer whose stream
+         * ends without it, it is not reported as crashed.
+         */
+        private void peerFinished(PeerMessage msg) {
+            logger.messageReceived(msg.remotePort, msg.text);
+            removeCrashedParticipants(Collections.singletonList(msg.remotePort));
+        }
+
+        public void removeCrashedParticipants(List<Integer> portToRemove) {
+            for (Integer port: portToRemove) {
+                idInputStreamMap.remove(port);
+                try {
+                    idSocketMap.remove(port).close();
+                } catch (IOException e) {
+                    e.printStackTrace();
                 }
             }
-            return newVote;
         }
 
         public void run() {
@@ -241,13 +682,104 @@ public class Participant {
             } catch (IOException | InterruptedException e) {
                 e.printStackTrace();
             }
+            for (Transport.Connection socket: idSocketMap.values()) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        /**
+         * Reads one peer's connection on its own thread, so a silent or
+         * crashed peer never delays reading the others. Messages are handed
+         * to the Receiver through its inbox; the Receiver alone decides when
+         * a round is over.
+         */
+        private class PeerReader implements Runnable {
+
+            private final int remotePort;
+            private final TokenReader in;
+            private final ParsedToken parsed = new ParsedToken();
+
+            PeerReader(int remotePort, TokenReader in) {
+                this.remotePort = remotePort;
+                this.in = in;
+            }
+
+            public void run() {
+                try {
+                    while (in.read(parsed))
+                        inbox.add(new PeerMessage(remotePort, parsed));
+                } catch (IOException e) {
+                    // Closed by the Receiver or reset by the peer.
+                } finally {
+                    // Whatever ended the stream, the Receiver must stop waiting for this peer.
+                    inbox.add(new PeerMessage(remotePort, null));
+                }
+            }
+        }
+    }
+
+    /**
+     * One message read from a peer, detached from the reader's reusable
+     * {@link ParsedToken}; {@code closed} marks the end of the peer's stream
+     * and {@code done} the DONE the peer sends when it finishes the exchange.
+     */
+    private class PeerMessage {
+
+        final int remotePort;
+        final long receivedAt = System.nanoTime();
+        final boolean closed;
+        final boolean done;
+        final int round;
+        final String text;
+        final VoteList votes;
+
+        PeerMessage(int remotePort, ParsedToken parsed) {
+            this.remotePort = remotePort;
+            this.closed = parsed == null;
+            this.done = !closed && parsed.type == ParsedToken.DONE;
+            this.round = closed ? 0 : parsed.round;
+            // Rendering the text allocates, so it is skipped unless messages are logged.
+            this.text = closed || !logger.isEnabled(LogFilter.Category.MESSAGE) ? null : parsed.message();
+            if (!closed && parsed.type == ParsedToken.VOTE) {
+                votes = new VoteList(options);
+                for (int v = 0; v < parsed.count; v++) {
+                    // Options outside the VOTE_OPTIONS list are not counted.
+                    if (parsed.options[v] >= 0)
+                        votes.add(parsed.ports[v], parsed.options[v]);
+                }
+            } else {
+                votes = null;
+            }
+        }
+    }
+
+    /**
+     * A round for the pipelined Sender to broadcast: the votes to send and
+     * the participants found crashed since the last one.
+     */
+    private static class OutgoingRound {
+
+        static final OutgoingRound DONE = new OutgoingRound(0, null, null);
+
+        final int round;
+        final VoteList votes;
+        final List<Integer> crashed;
+
+        OutgoingRound(int round, VoteList votes, List<Integer> crashed) {
+            this.round = round;
+            this.votes = votes;
+            this.crashed = crashed;
         }
     }
 
-    public class Sender extends Thread {
+    public class Sender implements Runnable {
 
-        private Map<Integer, PrintWriter> idOutputStreamMap;
-        private Map<Integer, Socket> idSocketMap;
+        private Map<Integer, TokenWriter> idOutputStreamMap;
+        private Map<Integer, Transport.Connection> idSocketMap;
         private int round = 1;
 
         public Sender() {
@@ -255,99 +787,213 @@ public class Participant {
             idSocketMap = new HashMap<>();
         }
 
-        public void createConnections() {
-            for (Integer port: participantPorts) {
-                try {
-                    Socket socket = new Socket("localhost", port);
-                    logger.connectionEstablished(socket.getPort());
-                    PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream()), true);
-                    String joinMsg = "JOIN " + thisParticipantPort;
-                    out.println(joinMsg);
-                    idOutputStreamMap.put(port, out);
-                    idSocketMap.put(port, socket);
-                    participants.add(socket);
-                } catch (UnknownHostException e) {
-                    e.printStackTrace();
-                } catch (IOException e) {
-                    e.printStackTrace();
+        /**
+         * Dials every peer at once, retrying refused connections until the
+         * setup deadline; a peer still unreachable then is left out and
+         * treated as crashed.
+         */
+        public void createConnections() throws InterruptedException {
+            try {
+                Map<Integer, Transport.Connection> connected = new PeerConnector(transport, setupDeadline).connectAll(topology.getSendTo());
+                for (Map.Entry<Integer, Transport.Connection> peer: connected.entrySet()) {
+                    int port = peer.getKey();
+                    Transport.Connection socket = peer.getValue();
+                    try {
+                        logger.connectionEstablished(socket.getRemotePort());
+                        PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream()));
+                        String joinMsg = "JOIN " + thisParticipantPort + (binaryFraming ? " BINARY" : "");
+                        // Sent straight away: the peer accepts no one else until it has read it.
+                        out.println(joinMsg);
+                        out.flush();
+                        idOutputStreamMap.put(port, binaryFraming
+                                ? new BinaryTokenWriter(new BufferedOutputStream(socket.getOutputStream()), new BinaryCodec(options))
+                                : new TextTokenWriter(out));
+                        idSocketMap.put(port, socket);
+                        participants.add(socket);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
                 }
+            } finally {
+                meshReady.countDown();
             }
-            senderSetUpDone = true;
         }
 
-        private void sendRound1Votes() throws InterruptedException {
-            synchronized (monitor) {
+        private void sendRound1Votes() throws InterruptedException, IOException {
+            turn.lock();
+            try {
                 while(!sendingVotes) {
-                    monitor.wait();
+                    turnChanged.await();
                 }
                 logger.beginRound(round);
-                String selectedOption = options.get(new Random().nextInt(options.size()));
-                String round1Msg = "VOTE " + thisParticipantPort + " " + selectedOption;
-                Vote vote = new Vote(thisParticipantPort, selectedOption);
-                currentVotes.add(vote);
+                FaultInjector.beforeRound(thisParticipantPort, round, Participant.this::crash);
+                votes.beginRound();
+                castVote();
+                VoteList ownVote = votes.learnedThisRound();
+                VoteToken round1Msg = new VoteToken(null, ownVote);
 
-                for (Map.Entry<Integer, PrintWriter> entry: idOutputStreamMap.entrySet()) {
+                for (Map.Entry<Integer, TokenWriter> entry: idOutputStreamMap.entrySet()) {
                     int port = entry.getKey();
-                    entry.getValue().println(round1Msg);
+                    if (!write(entry.getValue(), round1Msg))
+                        continue;
                     logger.messageSent(port, round1Msg);
-                    logger.votesSent(port, currentVotes);
+                    logger.votesSent(port, ownVote);
                 }
+                flushAll();
                 sendingVotes = false;
-                monitor.notify();
+                turnChanged.signal();
+            } finally {
+                turn.unlock();
             }
         }
 
         private void sendRoundNVotes() throws InterruptedException, IOException {
-            synchronized (monitor) {
+            turn.lock();
+            try {
                 while(!sendingVotes) {
-                    monitor.wait();
+                    turnChanged.await();
                 }
+                if (exchangeDone)
+                    return;
 
                 removeCrashedParticipants();
                 round++;
                 logger.beginRound(round);
+                FaultInjector.beforeRound(thisParticipantPort, round, Participant.this::crash);
 
-                for (Map.Entry<Integer, PrintWriter> entry: idOutputStreamMap.entrySet()) {
-                    String msg = "VOTE";
+                VoteList newVotes = votes.learnedThisRound();
+                VoteToken msg = new VoteToken(null, newVotes);
+                for (Map.Entry<Integer, TokenWriter> entry: idOutputStreamMap.entrySet()) {
                     int destinationPort = entry.getKey();
-                    for (Vote vote: newVotes) {
-                        msg += " " + vote.getParticipantPort() + " " + vote.getVote();
-                    }
-                    entry.getValue().println(msg);
+                    if (!write(entry.getValue(), msg))
+                        continue;
                     logger.messageSent(destinationPort, msg);
                     logger.votesSent(destinationPort, newVotes);
                 }
+                flushAll();
                 crashedParticipants.clear();
-                newVotes.clear();
                 sendingVotes = false;
-                monitor.notify();
+                turnChanged.signal();
+            } finally {
+                turn.unlock();
             }
         }
 
         public void sendVotes() throws InterruptedException, IOException {
-            synchronized (setUpConnectionMonitor) {
-                while (!receiverSetUpDone) {
-                    setUpConnectionMonitor.wait();
-                }
-                setUpConnectionMonitor.notify();
+            meshReady.await();
+            if (pipelined) {
+                sendPipelined();
+                return;
             }
             sendRound1Votes();
-            for (int i = 0; i < participantPorts.size(); i++) {
+            for (int i = 0; i < participantPorts.size() && !exchangeDone; i++) {
                 sendRoundNVotes();
             }
+            sendDone();
+        }
+
+        /**
+         * Ends every connection to a peer with DONE and closes it, so that a
+         * peer still in the exchange, as peers are when this participant
+         * stops early, goes on without waiting out a round for it.
+         */
+        private void sendDone() throws IOException {
+            Token done = new DoneToken(null);
+            for (Map.Entry<Integer, TokenWriter> entry: idOutputStreamMap.entrySet()) {
+                if (write(entry.getValue(), done))
+                    logger.messageSent(entry.getKey(), done);
+            }
+            flushAll();
+            idOutputStreamMap.clear();
+            for (Transport.Connection socket: idSocketMap.values())
+                socket.close();
+            idSocketMap.clear();
+        }
+
+        /**
+         * Broadcasts each round the Receiver hands over as soon as it is
+         * closed, without waiting for any round to be read. Rounds that
+         * queued up while the last batch was being sent go out together,
+         * with one flush per peer for all of them.
+         */
+        private void sendPipelined() throws InterruptedException, IOException {
+            List<OutgoingRound> due = new ArrayList<>();
+            while (true) {
+                due.clear();
+                due.add(outbox.take());
+                outbox.drainTo(due);
+                for (OutgoingRound next: due) {
+                    if (next == OutgoingRound.DONE) {
+                        sendDone();
+                        return;
+                    }
+                    for (Integer port: next.crashed) {
+                        idOutputStreamMap.remove(port);
+                        Transport.Connection socket = idSocketMap.remove(port);
+                        if (socket != null)
+                            socket.close();
+                    }
+                    round = next.round;
+                    logger.beginRound(round);
+                    FaultInjector.beforeRound(thisParticipantPort, round, Participant.this::crash);
+                    VoteToken msg = new VoteToken(null, next.votes);
+                    msg._round = round;
+                    for (Map.Entry<Integer, TokenWriter> entry: idOutputStreamMap.entrySet()) {
+                        int destinationPort = entry.getKey();
+                        if (!write(entry.getValue(), msg))
+                            continue;
+                        logger.messageSent(destinationPort, msg);
+                        logger.votesSent(destinationPort, next.votes);
+                    }
+                }
+                flushAll();
+            }
+        }
+
+        /**
+         * Buffers {@code token} for a peer; {@link #flushAll()} sends it.
+         *
+         * @return false if the peer's connection is already broken; its crash
+         * is reported by the Receiver once the round times out
+         */
+        private boolean write(TokenWriter out, Token token) {
+            try {
+                out.write(token);
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Sends what was written to each peer since the last flush, one send per peer.
+         */
+        private void flushAll() {
+            for (TokenWriter out: idOutputStreamMap.values()) {
+                try {
+                    out.flush();
+                } catch (IOException e) {
+                    // As with a failed write, the Receiver reports the crash.
+                }
+            }
         }
 
         private void removeCrashedParticipants() throws IOException{
             for (Integer port: crashedParticipants) {
                 idOutputStreamMap.remove(port);
-                idSocketMap.get(port).close();
+                // Outside a full mesh the crashed participant may not be one we send to.
+                Transport.Connection socket = idSocketMap.remove(port);
+                if (socket != null)
+                    socket.close();
             }
         }
 
         public void run() {
-            createConnections();
             try {
+                createConnections();
                 sendVotes();
+            } catch (FaultInjector.Crash e) {
+                // The participant is down; its peers and the Coordinator see its connections close.
             } catch (IOException | InterruptedException e) {
                 e.printStackTrace();
             }
@@ -360,20 +1006,9 @@ public class Participant {
         int loggerPort = Integer.parseInt(args[1]);
         int participantPort = Integer.parseInt(args[2]);
         int timeOut = Integer.parseInt(args[3]);
+        int sessionId = args.length > 4 ? Integer.parseInt(args[4]) : 0;
 
-        Participant participant = new Participant(cPort, loggerPort, participantPort, timeOut);
-        participant.joinCoordinator();
-        participant.receiveDetails();
-        participant.receiveVoteOptions();
-
-        Sender sender = participant.new Sender();
-        Receiver receiver = participant.new Receiver();
-        receiver.start();
-        sender.start();
-
-        sender.join();
-        receiver.join();
-        participant.decide();
-        participant.informOutcome();
+        Metrics.exportFromSystemProperties();
+        new Participant(cPort, loggerPort, participantPort, timeOut, sessionId).takePart();
     }
 }
\ No newline at end of file
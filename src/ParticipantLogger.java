@@ -1,15 +1,28 @@
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 public class ParticipantLogger {
 	
 	private static ParticipantLogger logger = null;
+	/** loggers not closed yet; one shutdown hook closes them all, however many a JVM creates */
+	private static final Set<ParticipantLogger> open = ConcurrentHashMap.newKeySet();
+	private static boolean hookRegistered = false;
 	
 	private final PrintStream ps;
 	private final UDPLoggerClient udpLoggerClient;
+	private final AsyncLogPipeline pipeline;
 	private final int thisParticipant;
+	private final LogFilter filter;
+	private final boolean messages;
+	private final boolean votes;
+	private final boolean connections;
+	private final boolean protocol;
+	private final boolean outcomes;
+	private final boolean faults;
 	
 	/**
 	 * Initialises the Logger for this Participant
@@ -34,31 +47,119 @@ public class ParticipantLogger {
 			throw new RuntimeException("ParticipantLogger not initialised yet");
 		return logger;
 	}
+
+	/**
+	 * @return a Logger of its own for one of several Participants running in this JVM
+	 */
+	public static ParticipantLogger newLogger(int loggerServerPort, int processId, int timeout) throws Exception {
+		return new ParticipantLogger(loggerServerPort, processId, timeout);
+	}
 	
 	private ParticipantLogger(int loggerServerPort, int processId, int timeout) throws Exception {
 		thisParticipant = processId;
 		udpLoggerClient = new UDPLoggerClient(loggerServerPort, processId, timeout);
 		ps = new PrintStream("participant_" + thisParticipant + "_" + System.currentTimeMillis() + ".log");
+		pipeline = AsyncLogPipeline.fromSystemProperties("participant-" + processId, this::writeBatch);
+		filter = LogFilter.fromSystemProperties();
+		messages = filter.isEnabled(LogFilter.Category.MESSAGE);
+		votes = filter.isEnabled(LogFilter.Category.VOTE);
+		connections = filter.isEnabled(LogFilter.Category.CONNECTION);
+		protocol = filter.isEnabled(LogFilter.Category.PROTOCOL);
+		outcomes = filter.isEnabled(LogFilter.Category.OUTCOME);
+		faults = filter.isEnabled(LogFilter.Category.FAULT);
+		open.add(this);
+		registerShutdownHook();
+	}
+
+	private static synchronized void registerShutdownHook() {
+		if (hookRegistered)
+			return;
+		hookRegistered = true;
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			for (ParticipantLogger logger: open)
+				logger.close();
+		}));
 	}
 	
+	/**
+	 * For callers that would have to build an event's arguments just to log
+	 * it; the event methods check this themselves before formatting.
+	 *
+	 * @return whether events of {@code category} are written
+	 */
+	public boolean isEnabled(LogFilter.Category category) {
+		return filter.isEnabled(category);
+	}
+
 	protected void logMessage(String message) {
+		if (pipeline != null) {
+			pipeline.publish(message);
+			return;
+		}
 		ps.println(message);
 		if (udpLoggerClient != null)
 			try {
 				udpLoggerClient.logToServer(message);
 			} catch (IOException e) {
-				ps.println("[P" + thisParticipant + "] Exception caught: " + e.getMessage());
-				ps.println("[P" + thisParticipant + "] Stack trace: " + e.getStackTrace());
+				logException(e);
 			}
 	}
 
+	/**
+	 * Drainer side of the async pipeline: one local write and as few
+	 * datagrams as the batch fits in.
+	 */
+	private void writeBatch(List<String> messages) {
+		for (String message: messages)
+			ps.println(message);
+		ps.flush();
+		if (udpLoggerClient != null)
+			try {
+				udpLoggerClient.logBatchToServer(messages);
+			} catch (IOException e) {
+				logException(e);
+			}
+	}
+
+	/**
+	 * Drains pending lines, waits for the logger server to acknowledge them
+	 * and releases the log file and the UDP socket. Nothing may be logged
+	 * afterwards. Loggers still open when the JVM exits are closed then.
+	 */
+	public void close() {
+		if (!open.remove(this))
+			return;
+		if (pipeline != null)
+			pipeline.close();
+		udpLoggerClient.close();
+		ps.close();
+	}
+
+	private void logException(IOException e) {
+		ps.println("[P" + thisParticipant + "] Exception caught: " + e.getMessage());
+		ps.println("[P" + thisParticipant + "] Stack trace: " + e.getStackTrace());
+	}
+
 	/**
 	 * To be invoked when this Participant sends the JOIN message to the Coordinator
 	 * 
 	 * @param coordinatorId the ID of the Coordinator, i.e. the port where the Coordinator is listening on
 	 */
 	public void joinSent(int coordinatorId) {
-		logMessage("[P" + thisParticipant + "] JOIN sent to Coordinator on port " + coordinatorId);
+		joinSent(coordinatorId, 0);
+	}
+	
+	/**
+	 * To be invoked when this Participant sends the JOIN message for a ballot to the Coordinator
+	 * 
+	 * @param coordinatorId the ID of the Coordinator, i.e. the port where the Coordinator is listening on
+	 * @param sessionId the ballot joined; named in the message unless it is the default ballot 0
+	 */
+	public void joinSent(int coordinatorId, int sessionId) {
+		if (!protocol)
+			return;
+		logMessage("[P" + thisParticipant + "] JOIN sent to Coordinator on port " + coordinatorId
+				+ (sessionId == 0 ? "" : " in session " + sessionId));
 	}
 	
 	/**
@@ -67,6 +168,8 @@ public class ParticipantLogger {
 	 * @param participantIds the list of Participant IDs 
 	 */
 	public void detailsReceived(List<Integer> participantIds) {
+		if (!protocol)
+			return;
 		logMessage("[P" + thisParticipant + "] received participant ports: " + participantIds.stream().map(Object::toString).collect(Collectors.joining(", ")));
 	}
 	
@@ -76,6 +179,8 @@ public class ParticipantLogger {
 	 * @param votingOptions the list of voting options
 	 */
 	public void voteOptionsReceived(List<String> votingOptions) {
+		if (!protocol)
+			return;
 		logMessage("[P" + thisParticipant + "] received vote options: " + votingOptions.stream().map(Object::toString).collect(Collectors.joining(", ")));
 	}
 	
@@ -85,6 +190,8 @@ public class ParticipantLogger {
 	 * @param round the number of the new round, e.g. 1 for the first round, 2 for the second and so on
 	 */
 	public void beginRound(int round) {
+		if (!protocol)
+			return;
 		logMessage("[P" + thisParticipant + "] begin round " + round);
 	}
 	
@@ -94,6 +201,8 @@ public class ParticipantLogger {
 	 * @param round the number of the round, e.g. 1 for the first round, 2 for the second and so on
 	 */
 	public void endRound(int round) {
+		if (!protocol)
+			return;
 		logMessage("[P" + thisParticipant + "] end round " + round);
 	}
 	
@@ -103,8 +212,10 @@ public class ParticipantLogger {
 	 * @param destinationParticipantId the ID of the other Participant, the port where the Participant is listening on
 	 * @param votes the list of votes sent
 	 */
-	public void votesSent(int destinationParticipantId, List<Vote> votes) {
-		logMessage("[P" + thisParticipant + "] votes sent to " + destinationParticipantId + ": " + votes.stream().map(Object::toString).collect(Collectors.joining(", ")));
+	public void votesSent(int destinationParticipantId, VoteList votes) {
+		if (!this.votes)
+			return;
+		logMessage("[P" + thisParticipant + "] votes sent to " + destinationParticipantId + ": " + votes);
 	}
 	
 	/**
@@ -113,8 +224,10 @@ public class ParticipantLogger {
 	 * @param senderParticipantId the ID of the other Participant, the port where the Participant is listening on
 	 * @param votes the list of votes received
 	 */
-	public void votesReceived(int senderParticipantId, List<Vote> votes) {
-		logMessage("[P" + thisParticipant + "] votes received from " + senderParticipantId + ": " + votes.stream().map(Object::toString).collect(Collectors.joining(", ")));
+	public void votesReceived(int senderParticipantId, VoteList votes) {
+		if (!this.votes)
+			return;
+		logMessage("[P" + thisParticipant + "] votes received from " + senderParticipantId + ": " + votes);
 	}
 	
 	/**
@@ -124,6 +237,8 @@ public class ParticipantLogger {
 	 * @param participantIds the list of IDs of Participants that were taken into account in settling the vote
 	 */
 	public void outcomeDecided(String vote, List<Integer> participantIds) {
+		if (!outcomes)
+			return;
 		logMessage("[P" + thisParticipant + "] outcome vote decided: " + vote + "(based on votes of Participants " + participantIds.stream().map(Object::toString).collect(Collectors.joining(", ")) + ")");
 	}
 	
@@ -134,6 +249,8 @@ public class ParticipantLogger {
 	 * @param participantIds the list of IDs of Participants that were taken into account in settling the vote
 	 */
 	public void outcomeNotified(String vote, List<Integer> participantIds) {
+		if (!outcomes)
+			return;
 		logMessage("[P" + thisParticipant + "] outcome vote sent to Coordinator: " + vote + "(based on votes of Participants " + participantIds.stream().map(Object::toString).collect(Collectors.joining(", ")) + ")");
 	}
 	
@@ -144,6 +261,8 @@ public class ParticipantLogger {
 	 * @param crashedParticipantId the ID of the crashed Participant, i.e. the port where the crashed Participant was listening on
 	 */
 	public void participantCrashed(int crashedParticipantId) {
+		if (!faults)
+			return;
 		logMessage("[P" + thisParticipant + "] participant crashed: " + crashedParticipantId);
 	}
 	
@@ -151,6 +270,8 @@ public class ParticipantLogger {
 	 * To be invoked when this Participant starts listening for incoming TCP connections
 	 */
 	public void startedListening() {
+		if (!connections)
+			return;
 		logMessage("[P" + thisParticipant + "] started listening on port " + thisParticipant);
 	}
 	
@@ -160,6 +281,8 @@ public class ParticipantLogger {
 	 * @param otherPort the remote port number to which this socket is connected; note that this is different from the ID of the other Participant
 	 */
 	public void connectionAccepted(int otherPort) {
+		if (!connections)
+			return;
 		logMessage("[P" + thisParticipant + "] accepted connection from port " + otherPort);
 	}
 	
@@ -169,6 +292,8 @@ public class ParticipantLogger {
 	 * @param otherPort the TCP port where the other process is listening on
 	 */
 	public void connectionEstablished(int otherPort) {
+		if (!connections)
+			return;
 		logMessage("[P" + thisParticipant + "] connection established to port " + otherPort);
 	}
 	
@@ -179,9 +304,23 @@ public class ParticipantLogger {
 	 * @param message the message sent
 	 */
 	public void messageSent(int destinationPort, String message) {
+		if (!messages)
+			return;
 		logMessage("[P" + thisParticipant + "] message sent to " + destinationPort + ": \"" + message + "\"");
 	}
 	
+	/**
+	 * To be invoked when this Participant sends a TCP message to another process
+	 * 
+	 * @param destinationPort the remote port number to which the message is sent
+	 * @param message the message sent, rendered as text only if messages are logged
+	 */
+	void messageSent(int destinationPort, Token message) {
+		if (!messages)
+			return;
+		messageSent(destinationPort, message.message());
+	}
+	
 	/**
 	 * To be invoked when this Participant receives a TCP message from another process
 	 * 
@@ -189,6 +328,8 @@ public class ParticipantLogger {
 	 * @param message the received message
 	 */
 	public void messageReceived(int senderPort, String message) {
+		if (!messages)
+			return;
 		logMessage("[P" + thisParticipant + "] message received from " + senderPort + ": \"" + message + "\"");
 	}
 }
@@ -0,0 +1,102 @@
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opens connections to a set of ports concurrently. A port that refuses
+ * the connection, typically because that participant is not listening
+ * yet, is retried after a jittered exponential backoff until the setup
+ * deadline passes.
+ *
+ * At most eight dials are in flight at once. A dial either connects or is
+ * refused within a round trip, and a refused port waits out its backoff
+ * on the scheduler rather than on a dialler, so a few threads keep pace
+ * with a large mesh without starting one thread per peer.
+ */
+class PeerConnector {
+
+    private static final long INITIAL_BACKOFF_MILLIS = 10;
+    private static final long MAX_BACKOFF_MILLIS = 1000;
+    private static final int MAX_DIALERS = 8;
+
+    private final Transport transport;
+    private final long deadline;
+    private final Map<Integer, Transport.Connection> connected = new HashMap<>();
+    private CountDownLatch outstanding;
+    private ScheduledExecutorService dialer;
+    private boolean finished;
+
+    /**
+     * @param deadline the {@link System#currentTimeMillis()} after which no more attempts are made
+     */
+    PeerConnector(Transport transport, long deadline) {
+        this.transport = transport;
+        this.deadline = deadline;
+    }
+
+    /**
+     * @return how long to wait before retry number {@code attempt} (from 0):
+     * between half and all of a cap that doubles from 10 ms up to 1 s, so
+     * that peers started together do not retry in lockstep
+     */
+    static long backoff(int attempt) {
+        long cap = Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << Math.min(attempt, 20));
+        return ThreadLocalRandom.current().nextLong(cap / 2, cap + 1);
+    }
+
+    /**
+     * Dials every port and returns as soon as all are connected or the deadline passes.
+     *
+     * @return the connections by port; ports that could not be reached in time are missing
+     */
+    Map<Integer, Transport.Connection> connectAll(Collection<Integer> ports) throws InterruptedException {
+        outstanding = new CountDownLatch(ports.size());
+        dialer = Executors.newScheduledThreadPool(Math.max(1, Math.min(ports.size(), MAX_DIALERS)), r -> {
+            Thread thread = new Thread(r, "peer-dialer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (Integer port: ports)
+            dialer.execute(() -> dial(port, 0));
+        outstanding.await(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        dialer.shutdownNow();
+        synchronized (this) {
+            finished = true;
+            return new HashMap<>(connected);
+        }
+    }
+
+    private void dial(int port, int attempt) {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+            outstanding.countDown();
+            return;
+        }
+        Transport.Connection socket;
+        try {
+            socket = transport.connect(port, (int) Math.min(remaining, Integer.MAX_VALUE));
+        } catch (IOException e) {
+            if (!dialer.isShutdown())
+                dialer.schedule(() -> dial(port, attempt + 1), backoff(attempt), TimeUnit.MILLISECONDS);
+            return;
+        }
+        synchronized (this) {
+            if (finished) {
+                // Connected just after the deadline; nobody will use it.
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                }
+                return;
+            }
+            connected.put(port, socket);
+        }
+        outstanding.countDown();
+    }
+}
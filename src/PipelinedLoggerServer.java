@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A logger server split into two stages so that disk writes never hold up
+ * acknowledgements. The receive stage reads each datagram into a pooled
+ * direct buffer, ACKs it straight away and queues it; the write stage
+ * drains the queue in batches into a {@link SegmentedLogWriter}.
+ *
+ * When every pooled buffer is waiting to be written the receive stage stops
+ * reading, so clients see missing ACKs and retransmit instead of losing lines.
+ */
+public class PipelinedLoggerServer {
+
+    private static class Datagram {
+        final ByteBuffer data = ByteBuffer.allocateDirect(UDPLoggerClient.MAX_DATAGRAM + WindowedLogTransport.MAX_HEADER);
+        long receiveTime;
+        int payloadStart;
+    }
+
+    private static final byte[] ACK = "ACK".getBytes(StandardCharsets.US_ASCII);
+
+    private final int port;
+    private final SegmentedLogWriter writer;
+    private final BlockingQueue<Datagram> free;
+    private final BlockingQueue<Datagram> received;
+    private final Map<String, ReceiveWindow> windows = new HashMap<>();
+    private final ByteBuffer ack = ByteBuffer.allocateDirect(UDPLoggerClient.MAX_DATAGRAM);
+
+    public PipelinedLoggerServer(int port, SegmentedLogWriter writer, int buffers) {
+        this.port = port;
+        this.writer = writer;
+        this.free = new ArrayBlockingQueue<>(buffers);
+        this.received = new ArrayBlockingQueue<>(buffers);
+        for (int i = 0; i < buffers; i++)
+            free.add(new Datagram());
+    }
+
+    public void run() throws IOException, InterruptedException {
+        Thread writeStage = new Thread(this::write, "logger-server-writer");
+        writeStage.setDaemon(true);
+        writeStage.start();
+
+        DatagramChannel channel = DatagramChannel.open();
+        channel.bind(new InetSocketAddress(port));
+        while (true) {
+            Datagram datagram = free.take();
+            datagram.data.clear();
+            SocketAddress sender = channel.receive(datagram.data);
+            datagram.receiveTime = System.currentTimeMillis();
+            datagram.data.flip();
+            if (acknowledge(channel, sender, datagram))
+                received.put(datagram);
+            else
+                free.put(datagram);
+        }
+    }
+
+    /**
+     * @return false for a sequenced datagram that was already received, or
+     * that came from an earlier epoch of a restarted process
+     */
+    private boolean acknowledge(DatagramChannel channel, SocketAddress sender, Datagram datagram) throws IOException {
+        ByteBuffer data = datagram.data;
+        ack.clear();
+        boolean fresh = true;
+        datagram.payloadStart = 0;
+        if (data.limit() > 0 && data.get(0) == '#') {
+            int slash = indexOf(data, (byte) '/', 0);
+            int colon = indexOf(data, (byte) ':', slash);
+            int space = indexOf(data, (byte) ' ', colon);
+            if (slash < 0 || colon < 0 || space < 0)
+                return false;
+            byte[] process = new byte[slash - 1];
+            data.get(1, process);
+            ReceiveWindow window = ReceiveWindow.select(windows, new String(process, StandardCharsets.US_ASCII), digits(data, slash + 1, colon));
+            if (window == null)
+                return false;
+            int floorSlash = indexOf(data, (byte) '/', colon);
+            int seqEnd = floorSlash < 0 || floorSlash > space ? space : floorSlash;
+            long floor = seqEnd == space ? 0 : digits(data, seqEnd + 1, space);
+            fresh = window.accept(digits(data, colon + 1, seqEnd), floor);
+            ack.put(window.ack().getBytes(StandardCharsets.US_ASCII));
+            datagram.payloadStart = space + 1;
+        } else {
+            ack.put(ACK);
+        }
+        ack.flip();
+        channel.send(ack, sender);
+        return fresh;
+    }
+
+    private static long digits(ByteBuffer data, int from, int to) {
+        long value = 0;
+        for (int i = from; i < to; i++)
+            value = value * 10 + (data.get(i) - '0');
+        return value;
+    }
+
+    private static int indexOf(ByteBuffer data, byte b, int from) {
+        if (from < 0)
+            return -1;
+        for (int i = from; i < data.limit(); i++) {
+            if (data.get(i) == b)
+                return i;
+        }
+        return -1;
+    }
+
+    private void write() {
+        List<Datagram> batch = new ArrayList<>();
+        try {
+            while (true) {
+                batch.add(received.take());
+                received.drainTo(batch);
+                for (Datagram datagram: batch) {
+                    writer.append(datagram.receiveTime, datagram.data, datagram.payloadStart, datagram.data.limit() - datagram.payloadStart);
+                    free.put(datagram);
+                }
+                batch.clear();
+                writer.endBatch();
+            }
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Configured with -Dlogger.server.segmentBytes, -Dlogger.server.segmentMillis,
+     * -Dlogger.server.fsync=none|batch|interval, -Dlogger.server.fsyncMillis
+     * and -Dlogger.server.buffers.
+     */
+    public static PipelinedLoggerServer fromSystemProperties(int port) throws IOException {
+        SegmentedLogWriter writer = new SegmentedLogWriter("logger_server",
+                Long.getLong("logger.server.segmentBytes", 64L * 1024 * 1024),
+                Long.getLong("logger.server.segmentMillis", 0L),
+                SegmentedLogWriter.Fsync.valueOf(System.getProperty("logger.server.fsync", "none").toUpperCase()),
+                Long.getLong("logger.server.fsyncMillis", 1000L));
+        return new PipelinedLoggerServer(port, writer, Integer.getInteger("logger.server.buffers", 4096));
+    }
+}
@@ -0,0 +1,12 @@
+/**
+ * One vote per participant; the option with the most votes wins.
+ */
+class PluralityRule implements VotingRule {
+
+    public int decide(VoteStore votes, TallyEngine tally) {
+        long[] counts = new long[tally.optionCount()];
+        for (int i = 0; i < votes.size(); i++)
+            counts[tally.option(votes, i)]++;
+        return tally.leader(counts);
+    }
+}
@@ -0,0 +1,82 @@
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Duplicate detection and acknowledgement state for one process using
+ * the windowed protocol of {@link WindowedLogTransport}.
+ *
+ * Each datagram carries the sender's floor, the lowest sequence number it
+ * still waits on; everything below was acknowledged or given up on, so the
+ * cumulative acknowledgement moves up to it even across datagrams that
+ * never arrived. The sequence numbers held above the cumulative one are
+ * therefore bounded by the sender's window.
+ */
+class ReceiveWindow {
+
+    /** the most sequence numbers listed after the cumulative one in an ACK */
+    static final int MAX_SELECTIVE = 32;
+
+    private final long epoch;
+    private long cumulative = 0;
+    private final TreeSet<Long> received = new TreeSet<>();
+
+    ReceiveWindow(long epoch) {
+        this.epoch = epoch;
+    }
+
+    /**
+     * Finds the window of {@code process}, replacing it when the process
+     * has restarted with a later epoch, so only one is kept per process.
+     *
+     * @return null for a datagram from an earlier epoch of the process
+     */
+    static ReceiveWindow select(Map<String, ReceiveWindow> windows, String process, long epoch) {
+        ReceiveWindow window = windows.get(process);
+        if (window == null || window.epoch < epoch) {
+            window = new ReceiveWindow(epoch);
+            windows.put(process, window);
+        }
+        return window.epoch == epoch ? window : null;
+    }
+
+    /**
+     * @param floor the sender's lowest unsettled sequence number, or 0 if it sent none
+     * @return false if {@code seq} was already received or given up on
+     */
+    boolean accept(long seq, long floor) {
+        if (floor - 1 > cumulative) {
+            cumulative = floor - 1;
+            received.headSet(cumulative, true).clear();
+        }
+        if (seq <= cumulative || !received.add(seq))
+            return false;
+        while (received.remove(cumulative + 1))
+            cumulative++;
+        return true;
+    }
+
+    /**
+     * @return <code>ACK &lt;cumulative&gt; [&lt;selective&gt; ...]</code>, listing the newest
+     * {@link #MAX_SELECTIVE} sequence numbers received above the cumulative one,
+     * so the latest arrivals are always acknowledged
+     */
+    String ack() {
+        StringBuilder ack = new StringBuilder("ACK ").append(cumulative);
+        Iterator<Long> newest = received.descendingIterator();
+        for (int selective = 0; selective < MAX_SELECTIVE && newest.hasNext(); selective++)
+            ack.append(' ').append(newest.next());
+        return ack.toString();
+    }
+
+    long cumulative() {
+        return cumulative;
+    }
+
+    /**
+     * @return the number of sequence numbers held above the cumulative one
+     */
+    int pending() {
+        return received.size();
+    }
+}
@@ -7,19 +7,60 @@ import java.util.StringTokenizer;
  */
 
 class ReqTokenizer {
+    private OptionTable options = new OptionTable(new ArrayList<>());
+
     ReqTokenizer() { ; }
+
+    /**
+     * Installs the table that VOTE options are looked up in; votes for
+     * options it does not hold are dropped.
+     */
+    void setOptions(OptionTable options) {
+	this.options = options;
+    }
     
     /**
-     * Parses requests.
+     * Parses requests. A request may be prefixed with
+     * <code>SESSION &lt;id&gt;</code> to address a ballot other than the default one,
+     * and then with <code>ROUND &lt;n&gt;</code> to name the round it belongs to.
      */
     Token getToken(String req) {
 	StringTokenizer sTokenizer = new StringTokenizer(req);
 	if (!(sTokenizer.hasMoreTokens()))
 	    return null;
 	String firstToken = sTokenizer.nextToken();
+	int session = 0;
+	if (firstToken.equals("SESSION")) {
+	    if (!sTokenizer.hasMoreTokens())
+		return null;
+	    session = Integer.parseInt(sTokenizer.nextToken());
+	    if (!sTokenizer.hasMoreTokens())
+		return null;
+	    firstToken = sTokenizer.nextToken();
+	}
+	int round = 0;
+	if (firstToken.equals("ROUND")) {
+	    if (!sTokenizer.hasMoreTokens())
+		return null;
+	    round = Integer.parseInt(sTokenizer.nextToken());
+	    if (!sTokenizer.hasMoreTokens())
+		return null;
+	    firstToken = sTokenizer.nextToken();
+	}
+	Token token = getToken(req, firstToken, sTokenizer);
+	if (token != null) {
+	    token._session = session;
+	    token._round = round;
+	}
+	return token;
+    }
+
+    private Token getToken(String req, String firstToken, StringTokenizer sTokenizer) {
 	if (firstToken.equals("JOIN")) {
 	    if (sTokenizer.hasMoreTokens()) {
-			return new JoinToken(req, Integer.parseInt(sTokenizer.nextToken()));
+			JoinToken join = new JoinToken(req, Integer.parseInt(sTokenizer.nextToken()));
+			join.binary = sTokenizer.hasMoreTokens() && sTokenizer.nextToken().equals("BINARY");
+			return join;
 		}
 	    else
 		return null;
@@ -38,25 +79,30 @@ class ReqTokenizer {
 	}
 	if (firstToken.equals("OUTCOME")) {
 		String outcome = sTokenizer.nextToken();
-		String involvedPorts = "";
+		StringBuilder involvedPorts = new StringBuilder();
 
 		while (sTokenizer.hasMoreTokens()) {
-			involvedPorts += " " + sTokenizer.nextToken();
+			involvedPorts.append(' ').append(sTokenizer.nextToken());
 		}
-		return new OutcomeToken(req, outcome, involvedPorts);
+		return new OutcomeToken(req, outcome, involvedPorts.toString());
 	}
 
 	if (firstToken.equals("VOTE")) {
-		List<Vote> voteList = new ArrayList<>();
+		VoteList voteList = new VoteList(options);
 		while(sTokenizer.hasMoreTokens()) {
 			int participantPort = Integer.parseInt(sTokenizer.nextToken());
-			String selectedVote = sTokenizer.nextToken();
-			voteList.add(new Vote(participantPort,selectedVote));
+			int selectedVote = options.id(sTokenizer.nextToken());
+			// Options outside the VOTE_OPTIONS list are not counted.
+			if (selectedVote >= 0)
+				voteList.add(participantPort, selectedVote);
 		}
 
 		return new VoteToken(req, voteList);
 	}
 
+	if (firstToken.equals("DONE"))
+	    return new DoneToken(req);
+
 	return null; // Ignore request..
     }
 }
@@ -66,18 +112,41 @@ class ReqTokenizer {
  */
 abstract class Token {
     String _req;
+    int _session;
+    int _round;
+
+    /**
+     * @return the text form of this request; built on demand for requests
+     * that did not arrive as text
+     */
+    String message() {
+	if (_req == null)
+	    _req = (_session == 0 ? "" : "SESSION " + _session + " ")
+		+ (_round == 0 ? "" : "ROUND " + _round + " ") + render();
+	return _req;
+    }
+
+    abstract String render();
 }
 
 /**
- * Syntax: JOIN &lt;name&gt;
+ * Syntax: JOIN &lt;name&gt; [BINARY]
+ *
+ * BINARY declares that binary frames follow on the rest of the stream;
+ * see {@link BinaryCodec}.
  */
 class JoinToken extends Token {
     int _id;
+    boolean binary;
 
     JoinToken(String req, int id) {
 	this._req = req;
 	this._id = id;
     }
+
+    String render() {
+	return "JOIN " + _id + (binary ? " BINARY" : "");
+    }
 }
 
 class DetailsToken extends Token {
@@ -88,6 +157,13 @@ class DetailsToken extends Token {
 		this._req = req;
 		this._portList = portList;
 	}
+
+	String render() {
+		StringBuilder msg = new StringBuilder("DETAILS");
+		for (Integer port: _portList)
+			msg.append(' ').append(port);
+		return msg.toString();
+	}
 }
 
 class VoteOptionsToken extends Token {
@@ -97,6 +173,13 @@ class VoteOptionsToken extends Token {
 		this._req = req;
 		this.optionList = optionList;
     }
+
+	String render() {
+		StringBuilder msg = new StringBuilder("VOTE_OPTIONS");
+		for (String option: optionList)
+			msg.append(' ').append(option);
+		return msg.toString();
+	}
 }
 
 class OutcomeToken extends Token {
@@ -107,16 +190,24 @@ class OutcomeToken extends Token {
 		this.outcome = outcome;
 		this.portsInvolved = portsInvolved;
     }
+
+	String render() {
+		return "OUTCOME " + outcome + portsInvolved;
+	}
 }
 
 class VoteToken extends Token {
 
-	List<Vote> vote;
+	VoteList vote;
 
-	VoteToken(String req, List<Vote> vote) {
+	VoteToken(String req, VoteList vote) {
 		this._req = req;
 		this.vote = vote;
 	}
-}
-
 
+	String render() {
+		StringBuilder msg = new StringBuilder("VOTE");
+		vote.appendTo(msg);
+		return msg.toString();
+	}
+}
@@ -0,0 +1,146 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only log segments written through a {@link FileChannel}.
+ *
+ * Lines are staged in one direct buffer and written in batches; a new
+ * segment is started once the current one exceeds a size or age limit.
+ * Segments are named <code>&lt;prefix&gt;_&lt;start&gt;.log</code>, then
+ * <code>&lt;prefix&gt;_&lt;start&gt;.1.log</code>, <code>.2.log</code> and so on.
+ */
+class SegmentedLogWriter {
+
+    /**
+     * When written data is forced to the storage device.
+     */
+    enum Fsync {
+        /** leave it to the operating system */
+        NONE,
+        /** after every batch */
+        BATCH,
+        /** at most once per configured interval */
+        INTERVAL
+    }
+
+    private final String prefix;
+    private final long startTime;
+    private final long segmentBytes;
+    private final long segmentMillis;
+    private final Fsync fsync;
+    private final long fsyncMillis;
+    private final ByteBuffer staging = ByteBuffer.allocateDirect(256 * 1024);
+
+    private FileChannel segment;
+    private int segmentNumber;
+    private long segmentSize;
+    private long segmentOpenedAt;
+    private long lastFsync;
+
+    SegmentedLogWriter(String prefix, long segmentBytes, long segmentMillis, Fsync fsync, long fsyncMillis) throws IOException {
+        this.prefix = prefix;
+        this.startTime = System.currentTimeMillis();
+        this.segmentBytes = segmentBytes;
+        this.segmentMillis = segmentMillis;
+        this.fsync = fsync;
+        this.fsyncMillis = fsyncMillis;
+        openSegment();
+    }
+
+    /**
+     * Appends {@code length} bytes of {@code data} starting at {@code offset}
+     * as one or more lines, each prefixed with {@code receiveTime} and a space.
+     */
+    void append(long receiveTime, ByteBuffer data, int offset, int length) throws IOException {
+        int lineStart = offset;
+        int end = offset + length;
+        for (int i = offset; i <= end; i++) {
+            if (i < end && data.get(i) != '\n')
+                continue;
+            int lineLength = i - lineStart;
+            if (staging.remaining() < lineLength + 21)
+                flush();
+            if (staging.remaining() < lineLength + 21) {
+                // Longer than the staging buffer: write it straight through.
+                writeTimestamp(receiveTime);
+                flush();
+                ByteBuffer line = data.duplicate();
+                line.limit(i).position(lineStart);
+                write(line);
+                staging.put((byte) '\n');
+            } else {
+                writeTimestamp(receiveTime);
+                for (int j = lineStart; j < i; j++)
+                    staging.put(data.get(j));
+                staging.put((byte) '\n');
+            }
+            lineStart = i + 1;
+        }
+    }
+
+    /**
+     * Writes everything staged so far, applies the fsync policy and rotates
+     * the segment if it has grown too large or too old.
+     */
+    void endBatch() throws IOException {
+        flush();
+        long now = System.currentTimeMillis();
+        if (fsync == Fsync.BATCH || (fsync == Fsync.INTERVAL && now - lastFsync >= fsyncMillis)) {
+            segment.force(false);
+            lastFsync = now;
+        }
+        if (segmentSize >= segmentBytes || (segmentMillis > 0 && now - segmentOpenedAt >= segmentMillis))
+            rotate();
+    }
+
+    void close() throws IOException {
+        flush();
+        if (fsync != Fsync.NONE)
+            segment.force(false);
+        segment.close();
+    }
+
+    private void writeTimestamp(long time) {
+        if (time == 0) {
+            staging.put((byte) '0');
+        } else {
+            int digits = 0;
+            for (long t = time; t > 0; t /= 10)
+                digits++;
+            int position = staging.position();
+            for (int i = digits - 1; i >= 0; i--) {
+                staging.put(position + i, (byte) ('0' + time % 10));
+                time /= 10;
+            }
+            staging.position(position + digits);
+        }
+        staging.put((byte) ' ');
+    }
+
+    private void flush() throws IOException {
+        staging.flip();
+        write(staging);
+        staging.clear();
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            segmentSize += segment.write(buffer);
+    }
+
+    private void rotate() throws IOException {
+        close();
+        segmentNumber++;
+        openSegment();
+    }
+
+    private void openSegment() throws IOException {
+        String name = prefix + "_" + startTime + (segmentNumber == 0 ? "" : "." + segmentNumber) + ".log";
+        segment = FileChannel.open(Paths.get(name), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        segmentSize = 0;
+        segmentOpenedAt = System.currentTimeMillis();
+    }
+}
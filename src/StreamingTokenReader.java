@@ -0,0 +1,60 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads newline-terminated text requests from a stream through one
+ * reusable buffer and hands each line to a {@link StreamingTokenizer}.
+ */
+class StreamingTokenReader implements TokenReader {
+
+    private final InputStream in;
+    private final StreamingTokenizer tokenizer;
+    private ByteBuffer buffer = ByteBuffer.allocate(4096);
+    private int start;
+    private int end;
+
+    StreamingTokenReader(InputStream in, StreamingTokenizer tokenizer) {
+        this.in = in;
+        this.tokenizer = tokenizer;
+    }
+
+    public boolean read(ParsedToken token) throws IOException {
+        while (true) {
+            for (int i = start; i < end; i++) {
+                if (buffer.get(i) != '\n')
+                    continue;
+                int lineEnd = (i > start && buffer.get(i - 1) == '\r') ? i - 1 : i;
+                buffer.limit(lineEnd).position(start);
+                start = i + 1;
+                boolean parsed = tokenizer.parse(buffer, token);
+                buffer.clear();
+                if (parsed)
+                    return true;
+                token.type = ParsedToken.NONE;
+                return true;
+            }
+            fill();
+            if (end < 0)
+                return false;
+        }
+    }
+
+    private void fill() throws IOException {
+        if (start > 0) {
+            System.arraycopy(buffer.array(), start, buffer.array(), 0, end - start);
+            end -= start;
+            start = 0;
+        }
+        if (end == buffer.capacity()) {
+            ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+            System.arraycopy(buffer.array(), 0, larger.array(), 0, end);
+            buffer = larger;
+        }
+        int n = in.read(buffer.array(), end, buffer.capacity() - end);
+        if (n < 0)
+            end = -1;
+        else
+            end += n;
+    }
+}
@@ -0,0 +1,217 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An allocation-free parser for the text protocol. Lines are parsed in
+ * place from a {@link ByteBuffer} into a caller-supplied {@link ParsedToken}
+ * whose primitive arrays are reused from one message to the next; ports are
+ * read as digits and options are matched against the VOTE_OPTIONS table by
+ * their bytes, so no strings are built for JOIN, DETAILS, VOTE or OUTCOME.
+ */
+class StreamingTokenizer {
+
+    private static final byte[] SESSION = bytes("SESSION");
+    private static final byte[] ROUND = bytes("ROUND");
+    private static final byte[] JOIN = bytes("JOIN");
+    private static final byte[] DETAILS = bytes("DETAILS");
+    private static final byte[] VOTE_OPTIONS = bytes("VOTE_OPTIONS");
+    private static final byte[] VOTE = bytes("VOTE");
+    private static final byte[] OUTCOME = bytes("OUTCOME");
+    private static final byte[] BINARY = bytes("BINARY");
+    private static final byte[] DONE = bytes("DONE");
+
+    private String[] optionNames = new String[0];
+    private byte[][] optionBytes = new byte[0][];
+    private int[] optionSlots = new int[0];
+
+    private ByteBuffer line;
+    private int position;
+    private int limit;
+    private int wordStart;
+    private int wordEnd;
+
+    StreamingTokenizer() { ; }
+
+    StreamingTokenizer(OptionTable options) {
+        setOptions(options);
+    }
+
+    /**
+     * Installs the option table that VOTE and OUTCOME options are matched
+     * against; an option listed twice matches its first position.
+     */
+    void setOptions(OptionTable options) {
+        optionNames = options.declaredNames().toArray(new String[0]);
+        optionBytes = new byte[optionNames.length][];
+        optionSlots = new int[Integer.highestOneBit(Math.max(1, optionNames.length) * 2) * 2];
+        java.util.Arrays.fill(optionSlots, -1);
+        for (int i = 0; i < optionNames.length; i++) {
+            optionBytes[i] = bytes(optionNames[i]);
+            int slot = hash(optionBytes[i], 0, optionBytes[i].length) & (optionSlots.length - 1);
+            while (optionSlots[slot] >= 0)
+                slot = (slot + 1) & (optionSlots.length - 1);
+            optionSlots[slot] = i;
+        }
+    }
+
+    String[] getOptionNames() {
+        return optionNames;
+    }
+
+    /**
+     * Parses the line between {@code in.position()} and {@code in.limit()},
+     * without its line terminator, into {@code token}.
+     *
+     * @return false if the line is not a request this protocol understands,
+     * including one with a malformed or out of range number
+     */
+    boolean parse(ByteBuffer in, ParsedToken token) {
+        line = in;
+        position = in.position();
+        limit = in.limit();
+        token.reset(optionNames);
+        try {
+            return parseRequest(token);
+        } catch (NumberFormatException e) {
+            token.type = ParsedToken.NONE;
+            return false;
+        }
+    }
+
+    private boolean parseRequest(ParsedToken token) {
+        if (!nextWord())
+            return false;
+        if (wordIs(SESSION)) {
+            if (!nextWord())
+                return false;
+            token.session = wordAsInt();
+            if (!nextWord())
+                return false;
+        }
+        if (wordIs(ROUND)) {
+            if (!nextWord())
+                return false;
+            token.round = wordAsInt();
+            if (!nextWord())
+                return false;
+        }
+
+        if (wordIs(JOIN)) {
+            if (!nextWord())
+                return false;
+            token.type = ParsedToken.JOIN;
+            token.addPort(wordAsInt());
+            token.binary = nextWord() && wordIs(BINARY);
+            return true;
+        }
+        if (wordIs(DETAILS)) {
+            token.type = ParsedToken.DETAILS;
+            while (nextWord())
+                token.addPort(wordAsInt());
+            return true;
+        }
+        if (wordIs(VOTE_OPTIONS)) {
+            // Once per ballot, so the option strings are built here.
+            token.type = ParsedToken.VOTE_OPTIONS;
+            List<String> names = new ArrayList<>();
+            while (nextWord())
+                names.add(new String(wordBytes(), StandardCharsets.UTF_8));
+            token.optionList = names;
+            return true;
+        }
+        if (wordIs(VOTE)) {
+            token.type = ParsedToken.VOTE;
+            while (nextWord()) {
+                int port = wordAsInt();
+                if (!nextWord())
+                    return false;
+                token.addVote(port, wordAsOption());
+            }
+            return true;
+        }
+        if (wordIs(OUTCOME)) {
+            if (!nextWord())
+                return false;
+            token.type = ParsedToken.OUTCOME;
+            token.outcome = wordAsOption();
+            while (nextWord())
+                token.addPort(wordAsInt());
+            return true;
+        }
+        if (wordIs(DONE)) {
+            token.type = ParsedToken.DONE;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean nextWord() {
+        while (position < limit && line.get(position) == ' ')
+            position++;
+        if (position >= limit)
+            return false;
+        wordStart = position;
+        while (position < limit && line.get(position) != ' ')
+            position++;
+        wordEnd = position;
+        return true;
+    }
+
+    private boolean wordIs(byte[] keyword) {
+        if (wordEnd - wordStart != keyword.length)
+            return false;
+        for (int i = 0; i < keyword.length; i++) {
+            if (line.get(wordStart + i) != keyword[i])
+                return false;
+        }
+        return true;
+    }
+
+    private int wordAsInt() {
+        int value = 0;
+        for (int i = wordStart; i < wordEnd; i++) {
+            int digit = line.get(i) - '0';
+            if (digit < 0 || digit > 9)
+                throw new NumberFormatException("Not a port at offset " + i);
+            if (value > (Integer.MAX_VALUE - digit) / 10)
+                throw new NumberFormatException("Number out of range at offset " + i);
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * @return the index of the current word in the option table, or -1 if it is not a known option
+     */
+    private int wordAsOption() {
+        int h = 1;
+        for (int i = wordStart; i < wordEnd; i++)
+            h = 31 * h + line.get(i);
+        int mask = optionSlots.length - 1;
+        for (int slot = h & mask; optionSlots.length > 0 && optionSlots[slot] >= 0; slot = (slot + 1) & mask) {
+            if (wordIs(optionBytes[optionSlots[slot]]))
+                return optionSlots[slot];
+        }
+        return -1;
+    }
+
+    private byte[] wordBytes() {
+        byte[] word = new byte[wordEnd - wordStart];
+        for (int i = 0; i < word.length; i++)
+            word[i] = line.get(wordStart + i);
+        return word;
+    }
+
+    private static int hash(byte[] bytes, int from, int to) {
+        int h = 1;
+        for (int i = from; i < to; i++)
+            h = 31 * h + bytes[i];
+        return h;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
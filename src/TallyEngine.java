@@ -0,0 +1,73 @@
+/**
+ * Decides the outcome of a vote from the votes in a {@link VoteStore}.
+ *
+ * Votes are counted in a single pass over their option ids; options
+ * listed more than once count under their {@link OptionTable#canonical}
+ * id so that their votes are counted together. Ties are broken in favour of the option that
+ * comes first in lexical order, which every participant agrees on no matter
+ * in which order it learned the votes.
+ *
+ * The counting itself is left to a {@link VotingRule}, chosen with
+ * -Dvote.rule=plurality|weighted (plurality by default).
+ */
+public class TallyEngine {
+
+    private final OptionTable options;
+    private final VotingRule rule;
+
+    public TallyEngine(OptionTable options, VotingRule rule) {
+        this.options = options;
+        this.rule = rule;
+    }
+
+    public static TallyEngine fromSystemProperties(OptionTable options) {
+        String rule = System.getProperty("vote.rule", "plurality");
+        switch (rule.toLowerCase()) {
+            case "plurality":
+                return new TallyEngine(options, new PluralityRule());
+            case "weighted":
+                return new TallyEngine(options, WeightedRule.fromSystemProperties());
+            default:
+                throw new IllegalArgumentException("Unknown voting rule " + rule);
+        }
+    }
+
+    /**
+     * @return the winning option, or null if there are no votes
+     */
+    public String decide(VoteStore votes) {
+        int winner = rule.decide(votes, this);
+        return winner < 0 ? null : options.name(winner);
+    }
+
+    public int optionCount() {
+        return options.size();
+    }
+
+    /**
+     * @return the canonical id of the option the {@code i}th vote in {@code votes} is for
+     */
+    int option(VoteStore votes, int i) {
+        return options.canonical(votes.optionAt(i));
+    }
+
+    /**
+     * @return the index with the highest count, the lexically first on a
+     * tie, or -1 if none has a vote
+     */
+    int leader(long[] counts) {
+        int leader = -1;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] <= 0)
+                continue;
+            if (leader < 0 || counts[i] > counts[leader]
+                    || (counts[i] == counts[leader] && lexicallyBefore(i, leader)))
+                leader = i;
+        }
+        return leader;
+    }
+
+    private boolean lexicallyBefore(int a, int b) {
+        return options.name(a).compareTo(options.name(b)) < 0;
+    }
+}
@@ -0,0 +1,119 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * Plain TCP sockets to {@code host}.
+ *
+ * Every message is written out whole with one flush, so Nagle's algorithm
+ * can only hold it back: TCP_NODELAY is on unless -Dsocket.tcpNoDelay=false.
+ * -Dsocket.sendBuffer and -Dsocket.receiveBuffer set SO_SNDBUF and
+ * SO_RCVBUF in bytes; the system's defaults apply otherwise.
+ */
+class TcpTransport implements Transport {
+
+    private final String host;
+    private final boolean tcpNoDelay;
+    private final int sendBuffer;
+    private final int receiveBuffer;
+
+    /**
+     * @param sendBuffer SO_SNDBUF in bytes, 0 for the system's default
+     * @param receiveBuffer SO_RCVBUF in bytes, 0 for the system's default
+     */
+    TcpTransport(String host, boolean tcpNoDelay, int sendBuffer, int receiveBuffer) {
+        this.host = host;
+        this.tcpNoDelay = tcpNoDelay;
+        this.sendBuffer = sendBuffer;
+        this.receiveBuffer = receiveBuffer;
+    }
+
+    static TcpTransport fromSystemProperties(String host) {
+        return new TcpTransport(host, Boolean.parseBoolean(System.getProperty("socket.tcpNoDelay", "true")),
+                Integer.getInteger("socket.sendBuffer", 0), Integer.getInteger("socket.receiveBuffer", 0));
+    }
+
+    /**
+     * Applies the socket options to a connected socket.
+     */
+    void configure(Socket socket) throws IOException {
+        socket.setTcpNoDelay(tcpNoDelay);
+        if (sendBuffer > 0)
+            socket.setSendBufferSize(sendBuffer);
+        if (receiveBuffer > 0)
+            socket.setReceiveBufferSize(receiveBuffer);
+    }
+
+    /**
+     * @return the receive buffer for listening sockets to set before they
+     * bind, so that accepted connections can use a window above 64 KB; 0 for the default
+     */
+    int getReceiveBuffer() {
+        return receiveBuffer;
+    }
+
+    public Listener listen(int port) throws IOException {
+        ServerSocket serverSocket = new ServerSocket();
+        if (receiveBuffer > 0)
+            serverSocket.setReceiveBufferSize(receiveBuffer);
+        serverSocket.bind(new InetSocketAddress(port));
+        return new Listener() {
+            public Connection accept(int timeoutMillis) throws IOException {
+                serverSocket.setSoTimeout(timeoutMillis);
+                Socket socket = serverSocket.accept();
+                configure(socket);
+                return new TcpConnection(socket);
+            }
+
+            public void close() throws IOException {
+                serverSocket.close();
+            }
+        };
+    }
+
+    public Connection connect(int port, int timeoutMillis) throws IOException {
+        Socket socket = new Socket();
+        try {
+            if (receiveBuffer > 0)
+                socket.setReceiveBufferSize(receiveBuffer);
+            socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+            configure(socket);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        return new TcpConnection(socket);
+    }
+
+    private static class TcpConnection implements Connection {
+
+        private final Socket socket;
+
+        TcpConnection(Socket socket) {
+            this.socket = socket;
+        }
+
+        public InputStream getInputStream() throws IOException {
+            return socket.getInputStream();
+        }
+
+        public OutputStream getOutputStream() throws IOException {
+            return socket.getOutputStream();
+        }
+
+        public int getRemotePort() {
+            return socket.getPort();
+        }
+
+        public void setSoTimeout(int timeoutMillis) throws IOException {
+            socket.setSoTimeout(timeoutMillis);
+        }
+
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
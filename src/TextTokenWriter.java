@@ -0,0 +1,28 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Newline-terminated text framing, one request per line.
+ */
+class TextTokenWriter implements TokenWriter {
+    private final PrintWriter out;
+
+    /**
+     * @param out a writer without autoflush
+     */
+    TextTokenWriter(PrintWriter out) {
+	this.out = out;
+    }
+
+    public void write(Token token) {
+	out.println(token.message());
+    }
+
+    /**
+     * @throws IOException if this or an earlier write failed, which PrintWriter only records
+     */
+    public void flush() throws IOException {
+	if (out.checkError())
+	    throw new IOException("Write to peer failed");
+    }
+}
@@ -0,0 +1,74 @@
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Starts the threads that serve connections: one per participant on the
+ * Coordinator, and the Sender, Receiver and one reader per peer on a
+ * Participant.
+ *
+ * They are platform threads unless -Dthreads.virtual=true asks for virtual
+ * threads, which park instead of holding an OS thread while they block on
+ * a connection, so tens of thousands of them cost little. They need a
+ * Java 21 runtime, or 19 and 20 with --enable-preview, but the code is
+ * built for Java 17, so they are looked up reflectively; on a JVM without
+ * them the flag falls back to platform threads with a warning. The build's
+ * jdk21 profile, active on Java 21 and later, runs the tests with the flag. The blocking code these threads run waits on
+ * java.util.concurrent locks rather than monitors, which would pin a
+ * virtual thread to its carrier.
+ */
+final class Threads {
+
+    private static final Method OF_VIRTUAL;
+    private static final Method NAME;
+    private static final Method UNSTARTED;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method unstarted = null;
+        if (Boolean.getBoolean("threads.virtual")) {
+            try {
+                ofVirtual = Thread.class.getMethod("ofVirtual");
+                Class<?> builder = Class.forName("java.lang.Thread$Builder");
+                name = builder.getMethod("name", String.class);
+                unstarted = builder.getMethod("unstarted", Runnable.class);
+                // Java 19 and 20 have the method but refuse it without --enable-preview.
+                ofVirtual.invoke(null);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                System.err.println("Virtual threads are not available on Java "
+                        + System.getProperty("java.version") + "; using platform threads");
+                ofVirtual = null;
+            }
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        UNSTARTED = unstarted;
+    }
+
+    private Threads() { }
+
+    static boolean virtual() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Starts {@code task} on a new thread.
+     *
+     * @param daemon whether a platform thread should be a daemon; virtual threads always are
+     */
+    static Thread start(String name, Runnable task, boolean daemon) {
+        Thread thread;
+        if (OF_VIRTUAL != null) {
+            try {
+                thread = (Thread) UNSTARTED.invoke(NAME.invoke(OF_VIRTUAL.invoke(null), name), task);
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                throw new IllegalStateException("Cannot create a virtual thread", e);
+            }
+        } else {
+            thread = new Thread(task, name);
+            thread.setDaemon(daemon);
+        }
+        thread.start();
+        return thread;
+    }
+}
@@ -0,0 +1,13 @@
+import java.io.IOException;
+
+/**
+ * Reads whole requests off a connection, whatever their framing.
+ */
+interface TokenReader {
+    /**
+     * Reads the next request into {@code token}, reusing its storage.
+     *
+     * @return false once the stream is closed
+     */
+    boolean read(ParsedToken token) throws IOException;
+}
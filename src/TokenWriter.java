@@ -0,0 +1,12 @@
+import java.io.IOException;
+
+/**
+ * Writes whole requests to a connection, whatever their framing. Writes
+ * are buffered until {@link #flush()}, so that everything bound for one
+ * peer in a round leaves in a single send.
+ */
+interface TokenWriter {
+    void write(Token token) throws IOException;
+
+    void flush() throws IOException;
+}
@@ -0,0 +1,102 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Which participants a Participant exchanges votes with.
+ *
+ * The default is a full mesh: one connection to and from every other
+ * participant. With -Dparticipant.topology=gossip each participant instead
+ * sends to {@code k} others (-Dparticipant.fanout, 3 by default) and hears
+ * from {@code k}: the participants are placed on a ring in an order
+ * shuffled by a seed derived from the ports, so every participant works out
+ * the same overlay without talking to the others, and each sends to the
+ * next {@code k} on the ring. That is O(N k) connections instead of O(N^2).
+ *
+ * Votes are flooded along the overlay for as many rounds as with the full
+ * mesh, at least one more than the longest path in it. The ring of
+ * successors stays strongly connected after any {@code k - 1} crashes, so
+ * every surviving participant still learns the same votes as long as no
+ * more than {@code k - 1} participants crash. To keep the guarantee of the
+ * full mesh, which tolerates any number of crashes, {@code k} is raised to
+ * one more than the number of crashes to tolerate,
+ * -Dparticipant.maxFaults, which defaults to every other participant; so
+ * a sparser overlay is only used once a lower fault bound is declared.
+ * All participants of a ballot must be started with the same topology
+ * settings.
+ */
+public class Topology {
+
+    private final List<Integer> sendTo;
+    private final int receiveFromCount;
+    private final boolean fullMesh;
+
+    private Topology(List<Integer> sendTo, int receiveFromCount, boolean fullMesh) {
+        this.sendTo = sendTo;
+        this.receiveFromCount = receiveFromCount;
+        this.fullMesh = fullMesh;
+    }
+
+    /**
+     * @param self the port of this participant
+     * @param others the ports of the other participants, as sent in DETAILS
+     */
+    public static Topology fromSystemProperties(int self, List<Integer> others) {
+        String topology = System.getProperty("participant.topology", "full");
+        switch (topology.toLowerCase()) {
+            case "full":
+                return fullMesh(others);
+            case "gossip":
+                return gossip(self, others, Integer.getInteger("participant.fanout", 3),
+                        Integer.getInteger("participant.maxFaults", others.size()));
+            default:
+                throw new IllegalArgumentException("Unknown topology " + topology);
+        }
+    }
+
+    public static Topology fullMesh(List<Integer> others) {
+        return new Topology(new ArrayList<>(others), others.size(), true);
+    }
+
+    /**
+     * @param fanout the number of participants to send to
+     * @param maxFaults the number of crashes every survivor must still learn the same votes through;
+     * the fanout is raised to one more than it
+     */
+    public static Topology gossip(int self, List<Integer> others, int fanout, int maxFaults) {
+        List<Integer> ring = new ArrayList<>(others);
+        ring.add(self);
+        Collections.sort(ring);
+        Collections.shuffle(ring, new Random(ring.hashCode()));
+        int k = Math.max(1, Math.min(Math.max(fanout, maxFaults + 1), ring.size() - 1));
+        if (k >= ring.size() - 1)
+            return fullMesh(others);
+        int position = ring.indexOf(self);
+        List<Integer> sendTo = new ArrayList<>(k);
+        for (int d = 1; d <= k; d++)
+            sendTo.add(ring.get((position + d) % ring.size()));
+        return new Topology(sendTo, k, false);
+    }
+
+    /**
+     * @return the ports of the participants this one sends its votes to
+     */
+    public List<Integer> getSendTo() {
+        return sendTo;
+    }
+
+    /**
+     * @return how many participants send their votes to this one
+     */
+    public int getReceiveFromCount() {
+        return receiveFromCount;
+    }
+
+    /**
+     * @return true if every participant exchanges votes with every other
+     */
+    public boolean isFullMesh() {
+        return fullMesh;
+    }
+}
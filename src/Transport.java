@@ -0,0 +1,68 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * How the Coordinator and Participants reach each other: listening on a
+ * port, dialling one, and a byte stream each way once connected.
+ *
+ * Chosen with -Dtransport=tcp|memory (tcp by default). The TCP transport
+ * uses real sockets on localhost; the memory transport
+ * ({@link MemoryTransport}) connects endpoints in the same JVM through
+ * queues, with optional latency and loss, so only in-process simulations
+ * can use it.
+ */
+public interface Transport {
+
+    static Transport fromSystemProperties() {
+        String transport = System.getProperty("transport", "tcp");
+        switch (transport.toLowerCase()) {
+            case "tcp":
+                return TcpTransport.fromSystemProperties("localhost");
+            case "memory":
+                return MemoryTransport.shared();
+            default:
+                throw new IllegalArgumentException("Unknown transport " + transport);
+        }
+    }
+
+    /**
+     * Starts accepting connections on {@code port}.
+     */
+    Listener listen(int port) throws IOException;
+
+    /**
+     * Connects to whoever listens on {@code port}.
+     *
+     * @param timeoutMillis how long to wait for the connection to be set up, 0 for ever
+     * @throws java.net.ConnectException if nobody listens on {@code port}
+     */
+    Connection connect(int port, int timeoutMillis) throws IOException;
+
+    interface Listener extends Closeable {
+        /**
+         * @param timeoutMillis how long to wait for a connection, 0 for ever
+         * @throws java.net.SocketTimeoutException if nobody connected in time
+         */
+        Connection accept(int timeoutMillis) throws IOException;
+    }
+
+    interface Connection extends Closeable {
+        InputStream getInputStream() throws IOException;
+
+        OutputStream getOutputStream() throws IOException;
+
+        /**
+         * @return the port of the other end: its listening port if this end
+         * dialled, otherwise the port it dialled from
+         */
+        int getRemotePort();
+
+        /**
+         * Bounds how long a read blocks before throwing
+         * {@link java.net.SocketTimeoutException}; 0 waits for ever.
+         */
+        void setSoTimeout(int timeoutMillis) throws IOException;
+    }
+}
@@ -1,39 +1,96 @@
 import java.io.IOException;
 import java.net.*;
+import java.util.List;
 
 public class UDPLoggerClient {
 
+	/** the largest log payload per datagram; {@link UDPLoggerServer} sizes its buffer from it */
+	static final int MAX_DATAGRAM = 1024;
+	static final int MAX_RETRANSMISSIONS = 3;
+
 	private DatagramSocket socket;
 	private int retransmissions;
 	private final int loggerServerPort;
 	private final int processId;
 	private final int timeout;
+	private final InetAddress loggerServerAddress;
+	private final WindowedLogTransport windowed;
 
+	/**
+	 * Uses stop-and-wait by default; with -Dlogger.window=N up to N
+	 * datagrams are kept in flight through a {@link WindowedLogTransport}.
+	 */
 	public UDPLoggerClient(int loggerServerPort, int processId, int timeout) throws Exception {
 		this.loggerServerPort = loggerServerPort;
 		this.processId = processId;
 		this.timeout = timeout;
-		socket = new DatagramSocket();
-		socket.setSoTimeout(timeout);
+		this.loggerServerAddress = InetAddress.getLocalHost();
+		int window = Integer.getInteger("logger.window", 0);
+		if (window > 0) {
+			windowed = new WindowedLogTransport(loggerServerAddress, loggerServerPort, processId, window, timeout);
+		} else {
+			windowed = null;
+			socket = new DatagramSocket();
+			socket.setSoTimeout(timeout);
+		}
 		retransmissions = 0;
 	}
 
 	public void logToServer(String message) throws IOException {
+		if (windowed != null) {
+			windowed.send(message);
+			return;
+		}
 		byte[] msg = message.getBytes();
-		DatagramPacket writePacket = new DatagramPacket(msg, msg.length, InetAddress.getLocalHost(), loggerServerPort);
-		socket.send(writePacket);
-
+		DatagramPacket writePacket = new DatagramPacket(msg, msg.length, loggerServerAddress, loggerServerPort);
 		byte[] receiveMsg = new byte[1024];
 		DatagramPacket readPacket = new DatagramPacket(receiveMsg, receiveMsg.length);
-		try{
-			socket.receive(readPacket);
+		for (int attempt = 0; attempt <= MAX_RETRANSMISSIONS; attempt++) {
+			long sentAt = System.nanoTime();
+			socket.send(writePacket);
+			try {
+				socket.receive(readPacket);
+				// Only the first attempt's ACK is an unambiguous sample.
+				if (attempt == 0)
+					Metrics.LOGGER_ACK.recordSince(sentAt);
+				return;
+			}
+			catch (SocketTimeoutException e) {
+				if (attempt > 0)
+					retransmissions++;
+			}
 		}
-		catch (SocketTimeoutException e) {
-			if (retransmissions == 3)
-				throw new IOException();
-			else
-				logToServer(message);
+		throw new IOException("No ACK from logger server after " + MAX_RETRANSMISSIONS + " retransmissions");
+	}
+
+	/**
+	 * Waits for outstanding datagrams of the windowed transport to be acknowledged.
+	 */
+	public void close() {
+		if (windowed != null)
+			windowed.close();
+		else
+			socket.close();
+	}
+
+	/**
+	 * Sends several log lines in as few datagrams as possible: lines are
+	 * joined with newlines up to {@link #MAX_DATAGRAM} bytes per datagram,
+	 * and each datagram is acknowledged as a whole.
+	 */
+	public void logBatchToServer(List<String> messages) throws IOException {
+		StringBuilder datagram = new StringBuilder();
+		for (String message: messages) {
+			if (datagram.length() > 0 && datagram.length() + 1 + message.length() > MAX_DATAGRAM) {
+				logToServer(datagram.toString());
+				datagram.setLength(0);
+			}
+			if (datagram.length() > 0)
+				datagram.append('\n');
+			datagram.append(message);
 		}
+		if (datagram.length() > 0)
+			logToServer(datagram.toString());
 	}
 
 	public int getLoggerServerPort() {
@@ -1,5 +1,7 @@
 import java.io.*;
 import java.net.*;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.logging.FileHandler;
 import java.util.logging.Logger;
 
@@ -11,22 +13,58 @@ public class UDPLoggerServer{
     private String ack;
     private DatagramSocket socket;
     private DatagramPacket packet;
+    private Map<String, ReceiveWindow> windows;
 
     public UDPLoggerServer (int portNum) throws Exception {
         ack = "ACK";
         port = portNum;
         socket = new DatagramSocket(port);
         ps = new PrintStream("logger_server_"+System.currentTimeMillis()+".log");
+        windows = new HashMap<>();
 
         while(true) {
             String msg = receiveMessage();
+            if (msg.startsWith("#")) {
+                receiveSequenced(msg);
+                continue;
+            }
             sendAcknowledgement(packet.getAddress(), packet.getPort());
             logMessages(msg, receiveTime);
         }
     }
 
+    /**
+     * Handles <code>#&lt;processId&gt;/&lt;epoch&gt;:&lt;seq&gt;/&lt;floor&gt; &lt;lines&gt;</code>:
+     * always acknowledges, but logs each sequence number only once.
+     * Datagrams from an earlier epoch of a restarted process are dropped.
+     */
+    public void receiveSequenced(String msg) throws IOException {
+        int slash = msg.indexOf('/');
+        int colon = msg.indexOf(':');
+        int space = msg.indexOf(' ', colon);
+        if (slash < 0 || colon < slash || space < 0)
+            return;
+        int floorSlash = msg.indexOf('/', colon);
+        int seqEnd = floorSlash < 0 || floorSlash > space ? space : floorSlash;
+        ReceiveWindow window;
+        boolean fresh;
+        try {
+            window = ReceiveWindow.select(windows, msg.substring(1, slash), Long.parseLong(msg.substring(slash + 1, colon)));
+            if (window == null)
+                return;
+            long floor = seqEnd == space ? 0 : Long.parseLong(msg.substring(seqEnd + 1, space));
+            fresh = window.accept(Long.parseLong(msg.substring(colon + 1, seqEnd)), floor);
+        } catch (NumberFormatException e) {
+            return;
+        }
+        byte[] ack = window.ack().getBytes();
+        socket.send(new DatagramPacket(ack, ack.length, packet.getAddress(), packet.getPort()));
+        if (fresh)
+            logMessages(msg.substring(space + 1), receiveTime);
+    }
+
     public String receiveMessage() throws IOException {
-        byte[] message = new byte[1024];
+        byte[] message = new byte[UDPLoggerClient.MAX_DATAGRAM + WindowedLogTransport.MAX_HEADER];
         packet = new DatagramPacket(message, message.length);
         socket.receive(packet);
         receiveTime = System.currentTimeMillis();
@@ -39,8 +77,18 @@ public class UDPLoggerServer{
         socket.send(packet);
     }
 
+    /**
+     * A datagram may carry a batch of newline-separated lines; each is
+     * logged with the time the datagram arrived.
+     */
     public void logMessages(String message, long receiveTime) {
-        ps.println(receiveTime + " " + message);
+        int start = 0;
+        int end;
+        while ((end = message.indexOf('\n', start)) >= 0) {
+            ps.println(receiveTime + " " + message.substring(start, end));
+            start = end + 1;
+        }
+        ps.println(receiveTime + " " + message.substring(start));
     }
 
     public int getPort() {
@@ -49,6 +97,9 @@ public class UDPLoggerServer{
 
     public static void main(String[] args) throws Exception {
         int port =Integer.parseInt(args[0]);
-        new UDPLoggerServer(port);
+        if (Boolean.getBoolean("logger.server.pipelined"))
+            PipelinedLoggerServer.fromSystemProperties(port).run();
+        else
+            new UDPLoggerServer(port);
     }
 }
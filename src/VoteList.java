@@ -0,0 +1,104 @@
+import java.util.Arrays;
+
+/**
+ * A list of votes, each packed into one long: the participant port in the
+ * high 32 bits and the {@link OptionTable} id of its option in the low 32.
+ *
+ * A vote costs eight bytes and no object of its own, and two votes are
+ * equal exactly when their longs are. Lists handed out by
+ * {@link VoteStore} are read-only views over its storage.
+ */
+public class VoteList {
+
+    private final OptionTable options;
+    private long[] votes;
+    private final int from;
+    private int size;
+    private final boolean view;
+
+    public VoteList(OptionTable options) {
+        this(options, new long[8], 0, 0, false);
+    }
+
+    private VoteList(OptionTable options, long[] votes, int from, int size, boolean view) {
+        this.options = options;
+        this.votes = votes;
+        this.from = from;
+        this.size = size;
+        this.view = view;
+    }
+
+    public static long pack(int port, int option) {
+        return ((long) port << 32) | (option & 0xFFFFFFFFL);
+    }
+
+    public static int port(long vote) {
+        return (int) (vote >>> 32);
+    }
+
+    public static int option(long vote) {
+        return (int) vote;
+    }
+
+    public void add(int port, int option) {
+        if (view)
+            throw new UnsupportedOperationException("Read-only view");
+        if (size == votes.length)
+            votes = Arrays.copyOf(votes, size * 2);
+        votes[size++] = pack(port, option);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long get(int i) {
+        return votes[from + i];
+    }
+
+    public int portAt(int i) {
+        return port(votes[from + i]);
+    }
+
+    public int optionAt(int i) {
+        return option(votes[from + i]);
+    }
+
+    public OptionTable getOptions() {
+        return options;
+    }
+
+    /**
+     * @return a read-only view of the votes from {@code start} up to {@code end};
+     * it stays valid as this list grows
+     */
+    public VoteList subList(int start, int end) {
+        return new VoteList(options, votes, from + start, end - start, true);
+    }
+
+    /**
+     * Appends the votes in VOTE message form, <code> &lt;port&gt; &lt;option&gt;</code> each.
+     */
+    void appendTo(StringBuilder msg) {
+        for (int i = 0; i < size; i++)
+            msg.append(' ').append(portAt(i)).append(' ').append(options.name(optionAt(i)));
+    }
+
+    /**
+     * @return the votes as <code>&lt;port, option&gt;</code> pairs separated by commas, as {@link Vote} prints them
+     */
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            if (i > 0)
+                s.append(", ");
+            s.append('<').append(portAt(i)).append(", ").append(options.name(optionAt(i))).append('>');
+        }
+        return s.toString();
+    }
+}
@@ -0,0 +1,132 @@
+import java.util.Arrays;
+
+/**
+ * The votes a Participant knows about, keyed by participant port.
+ *
+ * Ports map to option ids through an open-addressed int table, so
+ * membership and insertion are O(1) without boxing. Votes are also kept,
+ * packed, in a {@link VoteList} in the order they were learned, which makes
+ * the votes learned since {@link #beginRound()} a contiguous slice that can
+ * be re-broadcast as is.
+ *
+ * Not thread-safe. In the lockstep exchange the Sender and Receiver only
+ * touch it while holding the Participant's {@code turn} lock; in the
+ * pipelined exchange the Receiver alone writes it, with no lock, and hands
+ * the Sender read-only views of each round's votes through the outbox,
+ * whose queue publishes them safely. Once the exchange is over the
+ * Participant reads it after joining both threads.
+ */
+public class VoteStore {
+
+    private static final int EMPTY = Integer.MIN_VALUE;
+
+    private final VoteList learned;
+    private int[] keys;
+    private int[] values;
+    private int size;
+    private int roundStart;
+
+    public VoteStore(OptionTable options) {
+        this.learned = new VoteList(options);
+        this.keys = new int[16];
+        this.values = new int[16];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * Records the vote of {@code port} unless a vote from that port is already known.
+     *
+     * @return true if the vote was new
+     */
+    public boolean add(int port, int option) {
+        if ((size + 1) * 2 > keys.length)
+            rehash(keys.length * 2);
+        int mask = keys.length - 1;
+        int slot = mix(port) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == port)
+                return false;
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = port;
+        values[slot] = option;
+        learned.add(port, option);
+        size++;
+        return true;
+    }
+
+    public boolean contains(int port) {
+        return option(port) >= 0;
+    }
+
+    /**
+     * @return the option id voted by {@code port}, or -1 if unknown
+     */
+    public int option(int port) {
+        int mask = keys.length - 1;
+        int slot = mix(port) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == port)
+                return values[slot];
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Starts a new round: votes added from now on are reported by
+     * {@link #learnedThisRound()}.
+     */
+    public void beginRound() {
+        roundStart = size;
+    }
+
+    public int learnedThisRoundCount() {
+        return size - roundStart;
+    }
+
+    /**
+     * @return the votes added since the last {@link #beginRound()}, in the order they were learned
+     */
+    public VoteList learnedThisRound() {
+        return learned.subList(roundStart, size);
+    }
+
+    /**
+     * @return every known vote, in the order it was learned
+     */
+    public VoteList allVotes() {
+        return learned.subList(0, size);
+    }
+
+    public int portAt(int i) {
+        return learned.portAt(i);
+    }
+
+    public int optionAt(int i) {
+        return learned.optionAt(i);
+    }
+
+    private void rehash(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        int mask = capacity - 1;
+        for (int i = 0; i < size; i++) {
+            int slot = mix(learned.portAt(i)) & mask;
+            while (keys[slot] != EMPTY)
+                slot = (slot + 1) & mask;
+            keys[slot] = learned.portAt(i);
+            values[slot] = learned.optionAt(i);
+        }
+    }
+
+    private static int mix(int port) {
+        int h = port * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
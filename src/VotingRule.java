@@ -0,0 +1,10 @@
+/**
+ * A way of turning the collected votes into a single winning option.
+ */
+interface VotingRule {
+
+    /**
+     * @return the index of the winning option, or -1 if there are no votes
+     */
+    int decide(VoteStore votes, TallyEngine tally);
+}
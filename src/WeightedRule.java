@@ -0,0 +1,51 @@
+import java.util.Arrays;
+
+/**
+ * Plurality where each participant's vote counts its configured weight,
+ * set with -Dvote.weights=&lt;port&gt;:&lt;weight&gt;,... ; unlisted participants
+ * weigh 1.
+ */
+class WeightedRule implements VotingRule {
+
+    private final int[] ports;
+    private final long[] weights;
+
+    /**
+     * @param ports participant ports in ascending order
+     * @param weights the weight of the participant at the same position in {@code ports}
+     */
+    WeightedRule(int[] ports, long[] weights) {
+        this.ports = ports;
+        this.weights = weights;
+    }
+
+    static WeightedRule fromSystemProperties() {
+        String spec = System.getProperty("vote.weights", "").trim();
+        String[] entries = spec.isEmpty() ? new String[0] : spec.split(",");
+        long[] packed = new long[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            String[] entry = entries[i].trim().split(":");
+            packed[i] = ((long) Integer.parseInt(entry[0]) << 32) | (Integer.parseInt(entry[1]) & 0xFFFFFFFFL);
+        }
+        Arrays.sort(packed);
+        int[] ports = new int[packed.length];
+        long[] weights = new long[packed.length];
+        for (int i = 0; i < packed.length; i++) {
+            ports[i] = (int) (packed[i] >>> 32);
+            weights[i] = (int) packed[i];
+        }
+        return new WeightedRule(ports, weights);
+    }
+
+    public int decide(VoteStore votes, TallyEngine tally) {
+        long[] counts = new long[tally.optionCount()];
+        for (int i = 0; i < votes.size(); i++)
+            counts[tally.option(votes, i)] += weight(votes.portAt(i));
+        return tally.leader(counts);
+    }
+
+    private long weight(int port) {
+        int i = Arrays.binarySearch(ports, port);
+        return i < 0 ? 1 : weights[i];
+    }
+}
@@ -0,0 +1,321 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Sliding-window reliable delivery of log datagrams to {@link UDPLoggerServer}.
+ *
+ * Every datagram carries a header <code>#&lt;processId&gt;/&lt;epoch&gt;:&lt;seq&gt;/&lt;floor&gt; </code>
+ * with a per-process sequence number, so up to {@code window} datagrams can
+ * be in flight at once. The floor is the lowest sequence number not yet
+ * acknowledged or given up on, which lets the server move its cumulative
+ * acknowledgement past datagrams that will never be resent. The server answers with
+ * <code>ACK &lt;cumulative&gt; [&lt;selective&gt; ...]</code>: everything up to the
+ * cumulative sequence number has arrived, plus the listed later ones.
+ * Unacknowledged datagrams are resent when their retransmission timer,
+ * derived from the measured round-trip time as in RFC 6298, expires; a
+ * datagram is given up on after {@link #MAX_TRANSMISSIONS} attempts.
+ *
+ * Callers only block while the window is full, waiting on a Condition
+ * rather than a monitor so that a virtual thread does not pin its carrier.
+ * A single background thread reads ACKs and drives the timers over a
+ * connected, non-blocking {@link DatagramChannel}; datagram buffers are pooled.
+ */
+class WindowedLogTransport {
+
+    static final int MAX_HEADER = 64;
+    static final int MAX_TRANSMISSIONS = 4;
+    private static final long MIN_RTO_NANOS = 2_000_000L;
+
+    private final DatagramChannel channel;
+    private final Selector selector;
+    private final String headerPrefix;
+    private final Entry[] slots;
+    private final Deque<ByteBuffer> bufferPool = new ArrayDeque<>();
+    private final long maxRtoNanos;
+    private final Thread ackThread;
+    /** guards the window and the fields below */
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition windowOpened = lock.newCondition();
+
+    private long base = 1;
+    private long nextSeq = 1;
+    private long srttNanos = -1;
+    private long rttvarNanos;
+    private long rtoNanos;
+    private long retransmissions;
+    private long failures;
+    private volatile boolean running = true;
+
+    private static class Entry {
+        long seq;
+        ByteBuffer buffer;
+        long firstSentAt;
+        long deadline;
+        int transmissions;
+        boolean done;
+    }
+
+    WindowedLogTransport(InetAddress address, int port, int processId, int window, int timeout) throws IOException {
+        channel = DatagramChannel.open();
+        channel.connect(new InetSocketAddress(address, port));
+        channel.configureBlocking(false);
+        selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+        headerPrefix = "#" + processId + "/" + System.currentTimeMillis() + ":";
+        slots = new Entry[window];
+        for (int i = 0; i < window; i++)
+            slots[i] = new Entry();
+        maxRtoNanos = timeout * 1_000_000L;
+        rtoNanos = maxRtoNanos;
+        ackThread = new Thread(this::receiveAcks, "log-ack-" + processId);
+        ackThread.setDaemon(true);
+        ackThread.start();
+    }
+
+    /**
+     * Sends {@code message} as the next datagram, waiting only if the window is full.
+     */
+    void send(String message) throws IOException {
+        ByteBuffer buffer;
+        Entry entry;
+        lock.lock();
+        try {
+            while (nextSeq - base >= slots.length) {
+                if (!running)
+                    throw new IOException("Log transport closed");
+                try {
+                    windowOpened.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while the log window was full");
+                }
+            }
+            long seq = nextSeq++;
+            entry = slots[(int) (seq % slots.length)];
+            buffer = bufferPool.isEmpty() ? ByteBuffer.allocateDirect(UDPLoggerClient.MAX_DATAGRAM + MAX_HEADER) : bufferPool.poll();
+            buffer.clear();
+            buffer.put((headerPrefix + seq + "/" + base + " ").getBytes(StandardCharsets.US_ASCII));
+            byte[] payload = message.getBytes();
+            buffer.put(payload, 0, Math.min(payload.length, buffer.remaining()));
+            buffer.flip();
+            entry.seq = seq;
+            entry.buffer = buffer;
+            entry.transmissions = 1;
+            entry.done = false;
+            entry.firstSentAt = System.nanoTime();
+            entry.deadline = entry.firstSentAt + rtoNanos;
+            transmit(entry);
+        } finally {
+            lock.unlock();
+        }
+        selector.wakeup();
+    }
+
+    private void transmit(Entry entry) throws IOException {
+        ByteBuffer buffer = entry.buffer.duplicate();
+        // A full socket buffer drops the datagram; the timer resends it.
+        channel.write(buffer);
+    }
+
+    private void receiveAcks() {
+        ByteBuffer ack = ByteBuffer.allocateDirect(UDPLoggerClient.MAX_DATAGRAM);
+        byte[] ackBytes = new byte[UDPLoggerClient.MAX_DATAGRAM];
+        while (running || inFlight()) {
+            try {
+                selector.select(Math.max(1, nextDeadlineMillis()));
+                selector.selectedKeys().clear();
+                ack.clear();
+                while (channel.read(ack) > 0) {
+                    ack.flip();
+                    int length = ack.remaining();
+                    ack.get(ackBytes, 0, length);
+                    acknowledge(ackBytes, length);
+                    ack.clear();
+                }
+                retransmitExpired();
+            } catch (IOException e) {
+                // Server unreachable for now; the timers keep retrying.
+            }
+        }
+    }
+
+    private boolean inFlight() {
+        lock.lock();
+        try {
+            return base < nextSeq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long nextDeadlineMillis() {
+        lock.lock();
+        try {
+            long next = Long.MAX_VALUE;
+            for (long seq = base; seq < nextSeq; seq++) {
+                Entry entry = slots[(int) (seq % slots.length)];
+                if (!entry.done)
+                    next = Math.min(next, entry.deadline);
+            }
+            if (next == Long.MAX_VALUE)
+                return 100;
+            return (next - System.nanoTime()) / 1_000_000L;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Parses <code>ACK &lt;cumulative&gt; [&lt;selective&gt; ...]</code>.
+     */
+    private void acknowledge(byte[] ack, int length) {
+        if (length < 4 || ack[0] != 'A' || ack[1] != 'C' || ack[2] != 'K')
+            return;
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            boolean first = true;
+            int i = 3;
+            while (i < length) {
+                while (i < length && ack[i] == ' ')
+                    i++;
+                if (i >= length)
+                    break;
+                long seq = 0;
+                while (i < length && ack[i] >= '0' && ack[i] <= '9')
+                    seq = seq * 10 + (ack[i++] - '0');
+                if (first) {
+                    for (long s = base; s <= seq && s < nextSeq; s++)
+                        complete(slots[(int) (s % slots.length)], now);
+                    first = false;
+                } else if (seq >= base && seq < nextSeq) {
+                    complete(slots[(int) (seq % slots.length)], now);
+                }
+            }
+            while (base < nextSeq && slots[(int) (base % slots.length)].done)
+                base++;
+            windowOpened.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void complete(Entry entry, long now) {
+        if (entry.done)
+            return;
+        // Karn's rule: only unambiguous samples update the estimate.
+        if (entry.transmissions == 1)
+            sampleRtt(now - entry.firstSentAt);
+        release(entry);
+    }
+
+    private void sampleRtt(long rtt) {
+        Metrics.LOGGER_ACK.record(rtt);
+        if (srttNanos < 0) {
+            srttNanos = rtt;
+            rttvarNanos = rtt / 2;
+        } else {
+            rttvarNanos = (3 * rttvarNanos + Math.abs(srttNanos - rtt)) / 4;
+            srttNanos = (7 * srttNanos + rtt) / 8;
+        }
+        rtoNanos = Math.min(maxRtoNanos, Math.max(MIN_RTO_NANOS, srttNanos + 4 * rttvarNanos));
+    }
+
+    private void retransmitExpired() throws IOException {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            for (long seq = base; seq < nextSeq; seq++) {
+                Entry entry = slots[(int) (seq % slots.length)];
+                if (entry.done || entry.deadline > now)
+                    continue;
+                if (entry.transmissions >= MAX_TRANSMISSIONS) {
+                    failures++;
+                    release(entry);
+                    continue;
+                }
+                entry.transmissions++;
+                retransmissions++;
+                entry.deadline = now + Math.min(maxRtoNanos, rtoNanos << (entry.transmissions - 1));
+                transmit(entry);
+            }
+            while (base < nextSeq && slots[(int) (base % slots.length)].done)
+                base++;
+            windowOpened.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(Entry entry) {
+        entry.done = true;
+        bufferPool.push(entry.buffer);
+        entry.buffer = null;
+    }
+
+    long getRetransmissions() {
+        lock.lock();
+        try {
+            return retransmissions;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of datagrams given up on after {@link #MAX_TRANSMISSIONS} attempts
+     */
+    long getFailures() {
+        lock.lock();
+        try {
+            return failures;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the current smoothed round-trip time in nanoseconds, or -1 before the first sample
+     */
+    long getSmoothedRtt() {
+        lock.lock();
+        try {
+            return srttNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until every datagram sent so far is acknowledged or given up on, then stops.
+     */
+    void close() {
+        running = false;
+        selector.wakeup();
+        try {
+            ackThread.join();
+            selector.close();
+            channel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        lock.lock();
+        try {
+            windowOpened.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
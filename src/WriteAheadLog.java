@@ -0,0 +1,338 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * A durable log of protocol state transitions, so that a restarted
+ * Coordinator or Participant can pick up where it stopped.
+ *
+ * Records are single lines of text, each stored with its CRC32 so that a
+ * record torn by a crash is detected and dropped on recovery. Appends are
+ * group committed: callers queue records and return, one committer thread
+ * writes everything queued with a single write and a single fsync, and
+ * {@link #sync(long)} waits until a record is on disk. A checkpoint
+ * atomically replaces the previous one and empties the log, so recovery
+ * reads the last checkpoint plus the records logged after it. A record may
+ * be covered by a checkpoint and replayed after it as well, so replaying
+ * one must be idempotent.
+ *
+ * Enabled by pointing -Dwal.dir at a directory; the log of a process is
+ * <code>&lt;name&gt;.wal</code> and its checkpoint <code>&lt;name&gt;.checkpoint</code>.
+ * -Dwal.checkpointEvery sets how many records {@link #needsCheckpoint()}
+ * lets through between checkpoints.
+ */
+class WriteAheadLog {
+
+    private final Path logFile;
+    private final Path checkpointFile;
+    private final int checkpointEvery;
+    private final List<String> recoveredCheckpoint;
+    private final List<String> recoveredRecords;
+    private final FileChannel log;
+    private final Thread committer;
+    private final ByteBuffer staging = ByteBuffer.allocateDirect(64 * 1024);
+    private final CRC32 crc = new CRC32();
+    /** guards the fields below; a lock rather than a monitor so that a virtual thread waiting in sync() is not pinned */
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    /** records and checkpoints (as List&lt;String&gt;) not yet picked up by the committer */
+    private List<Object> queue = new ArrayList<>();
+    private long appended;
+    private long durable;
+    private int sinceCheckpoint;
+    private IOException failure;
+    private boolean closed;
+
+    /**
+     * @return the log for process {@code name} in -Dwal.dir, or null if the WAL is off
+     */
+    static WriteAheadLog fromSystemProperties(String name) throws IOException {
+        String dir = System.getProperty("wal.dir");
+        if (dir == null)
+            return null;
+        return new WriteAheadLog(Paths.get(dir), name, Integer.getInteger("wal.checkpointEvery", 1024));
+    }
+
+    /**
+     * Opens the log, recovering whatever a previous run left behind and
+     * cutting off a torn last record.
+     */
+    WriteAheadLog(Path dir, String name, int checkpointEvery) throws IOException {
+        Files.createDirectories(dir);
+        this.logFile = dir.resolve(name + ".wal");
+        this.checkpointFile = dir.resolve(name + ".checkpoint");
+        this.checkpointEvery = checkpointEvery;
+        this.recoveredCheckpoint = Collections.unmodifiableList(read(checkpointFile, new long[1]));
+        long[] validLength = new long[1];
+        this.recoveredRecords = Collections.unmodifiableList(read(logFile, validLength));
+        this.log = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        log.truncate(validLength[0]);
+        log.position(validLength[0]);
+        this.sinceCheckpoint = recoveredRecords.size();
+        this.committer = new Thread(this::commit, name + "-wal-committer");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    /**
+     * @return the state saved by the last checkpoint of a previous run, empty if there was none
+     */
+    List<String> recoveredCheckpoint() {
+        return recoveredCheckpoint;
+    }
+
+    /**
+     * @return the records a previous run logged after its last checkpoint, in order
+     */
+    List<String> recoveredRecords() {
+        return recoveredRecords;
+    }
+
+    boolean isEmpty() {
+        return recoveredCheckpoint.isEmpty() && recoveredRecords.isEmpty();
+    }
+
+    /**
+     * Queues {@code record}, which must not contain a line break, without waiting for it to be written.
+     *
+     * @return the sequence number to pass to {@link #sync(long)}
+     */
+    long append(String record) {
+        lock.lock();
+        try {
+            queue.add(record);
+            sinceCheckpoint++;
+            changed.signalAll();
+            return ++appended;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until the record numbered {@code sequence}, and so every record before it, is on disk.
+     */
+    void sync(long sequence) throws IOException, InterruptedException {
+        lock.lock();
+        try {
+            while (durable < sequence && failure == null)
+                changed.await();
+            if (failure != null)
+                throw failure;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends {@code record} and waits until it is on disk.
+     */
+    void appendAndSync(String record) throws IOException, InterruptedException {
+        sync(append(record));
+    }
+
+    /**
+     * @return true once enough records were appended since the last checkpoint
+     */
+    boolean needsCheckpoint() {
+        lock.lock();
+        try {
+            return sinceCheckpoint >= checkpointEvery;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replaces the log with the records {@code state} returns, and waits
+     * until the checkpoint is on disk. {@code state} is called with appends
+     * held off, so it reflects every record appended before it.
+     */
+    void checkpoint(Supplier<List<String>> state) throws IOException, InterruptedException {
+        long sequence;
+        lock.lock();
+        try {
+            queue.add(new ArrayList<>(state.get()));
+            sinceCheckpoint = 0;
+            changed.signalAll();
+            sequence = ++appended;
+        } finally {
+            lock.unlock();
+        }
+        sync(sequence);
+    }
+
+    /**
+     * Writes out everything queued and stops the committer.
+     */
+    void close() throws IOException, InterruptedException {
+        lock.lock();
+        try {
+            closed = true;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        committer.join();
+        log.close();
+        if (failure != null)
+            throw failure;
+    }
+
+    /**
+     * Closes the log and deletes it with its checkpoint, once there is nothing left to recover.
+     */
+    void delete() throws IOException, InterruptedException {
+        close();
+        Files.deleteIfExists(logFile);
+        Files.deleteIfExists(checkpointFile);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void commit() {
+        while (true) {
+            List<Object> batch;
+            long upTo;
+            lock.lock();
+            try {
+                while (queue.isEmpty() && !closed)
+                    changed.await();
+                if (queue.isEmpty())
+                    return;
+                batch = queue;
+                queue = new ArrayList<>();
+                upTo = appended;
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                boolean dirty = false;
+                for (Object entry: batch) {
+                    if (entry instanceof String) {
+                        stage(log, (String) entry);
+                        dirty = true;
+                    } else {
+                        writeCheckpoint((List<String>) entry);
+                        dirty = false;
+                    }
+                }
+                if (dirty) {
+                    flush(log);
+                    log.force(false);
+                }
+            } catch (IOException e) {
+                lock.lock();
+                try {
+                    failure = e;
+                    changed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+            lock.lock();
+            try {
+                durable = upTo;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Writes {@code state} to a temporary file, moves it over the previous
+     * checkpoint and then empties the log. Records staged before the
+     * checkpoint are dropped, as the checkpoint covers them.
+     */
+    private void writeCheckpoint(List<String> state) throws IOException {
+        staging.clear();
+        Path temporary = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (String line: state)
+                stage(out, line);
+            flush(out);
+            out.force(false);
+        }
+        Files.move(temporary, checkpointFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        log.truncate(0);
+        log.position(0);
+        log.force(false);
+    }
+
+    private void stage(FileChannel out, String record) throws IOException {
+        byte[] bytes = record.getBytes(StandardCharsets.UTF_8);
+        crc.reset();
+        crc.update(bytes);
+        if (staging.remaining() < bytes.length + 10)
+            flush(out);
+        if (staging.capacity() < bytes.length + 10) {
+            out.write(ByteBuffer.wrap(String.format("%08x ", crc.getValue()).getBytes(StandardCharsets.US_ASCII)));
+            ByteBuffer line = ByteBuffer.wrap(bytes);
+            while (line.hasRemaining())
+                out.write(line);
+            staging.put((byte) '\n');
+            return;
+        }
+        staging.put(String.format("%08x ", crc.getValue()).getBytes(StandardCharsets.US_ASCII));
+        staging.put(bytes);
+        staging.put((byte) '\n');
+    }
+
+    private void flush(FileChannel out) throws IOException {
+        staging.flip();
+        while (staging.hasRemaining())
+            out.write(staging);
+        staging.clear();
+    }
+
+    /**
+     * @param validLength receives the length of the intact prefix of the file
+     * @return the records of {@code file} up to the first torn or corrupt one
+     */
+    private static List<String> read(Path file, long[] validLength) throws IOException {
+        List<String> records = new ArrayList<>();
+        if (!Files.exists(file))
+            return records;
+        byte[] data = Files.readAllBytes(file);
+        CRC32 crc = new CRC32();
+        int start = 0;
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] != '\n')
+                continue;
+            if (i - start < 9 || data[start + 8] != ' ')
+                break;
+            long expected;
+            try {
+                expected = Long.parseLong(new String(data, start, 8, StandardCharsets.US_ASCII), 16);
+            } catch (NumberFormatException e) {
+                break;
+            }
+            crc.reset();
+            crc.update(data, start + 9, i - start - 9);
+            if (crc.getValue() != expected)
+                break;
+            records.add(new String(data, start + 9, i - start - 9, StandardCharsets.UTF_8));
+            start = i + 1;
+        }
+        validLength[0] = start;
+        return records;
+    }
+}